@@ -0,0 +1,97 @@
+package com.seagazer.ui.image;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * 虚化算法的基准测试，覆盖不同的图片尺寸、虚化半径以及串行和并行两种模式
+ * <p>
+ * 输入像素使用固定的随机种子生成，输出写入单独的数组，每次调用的输入都相同，
+ * 工作缓冲在预热时分配完毕，测量阶段的内存分配率反映的是算法本身的分配。
+ */
+@State(Scope.Thread)
+public class BlurBenchmark {
+    private static final long SEED = 20191228;
+
+    @Param({"320x180", "1280x720", "1920x1080", "3840x2160"})
+    public String size;
+
+    @Param({"1", "10", "25", "100"})
+    public int radius;
+
+    @Param({"serial", "parallel"})
+    public String mode;
+
+    private int mWidth;
+    private int mHeight;
+    private int[] mArgb;
+    private int[] mOut;
+    private byte[] mAlpha;
+    private byte[] mAlphaOut;
+    private BlurWorkspace mWorkspace;
+    private StripeBlur.PixelSource mSource;
+    private StripeBlur.PixelSink mSink;
+
+    @Setup
+    public void setup() {
+        String[] dimensions = size.split("x");
+        mWidth = Integer.parseInt(dimensions[0]);
+        mHeight = Integer.parseInt(dimensions[1]);
+        Random random = new Random(SEED);
+        mArgb = new int[mWidth * mHeight];
+        for (int i = 0; i < mArgb.length; i++) {
+            mArgb[i] = random.nextInt();
+        }
+        mOut = new int[mArgb.length];
+        mAlpha = new byte[mArgb.length];
+        random.nextBytes(mAlpha);
+        mAlphaOut = new byte[mAlpha.length];
+        mWorkspace = new BlurWorkspace();
+        if ("parallel".equals(mode)) {
+            mWorkspace.setParallelism(Runtime.getRuntime().availableProcessors());
+        }
+        mSource = new StripeBlur.PixelSource() {
+            @Override
+            public void read(int y, int rows, int[] pixels, int stride) {
+                System.arraycopy(mArgb, y * mWidth, pixels, 0, rows * mWidth);
+            }
+        };
+        mSink = new StripeBlur.PixelSink() {
+            @Override
+            public void write(int y, int rows, int[] pixels, int offset, int stride) {
+                System.arraycopy(pixels, offset, mOut, y * mWidth, rows * mWidth);
+            }
+        };
+    }
+
+    @Benchmark
+    public int[] stackBlur() {
+        return FastBlur.blur(mArgb, 0, mWidth, mWidth, mHeight, radius, mOut, mWorkspace);
+    }
+
+    @Benchmark
+    public int[] packedStackBlur() {
+        return FastBlur.blurPacked(mArgb, 0, mWidth, mWidth, mHeight, radius, mOut, mWorkspace);
+    }
+
+    @Benchmark
+    public byte[] alphaStackBlur() {
+        return FastBlur.blurAlpha(mAlpha, 0, mWidth, mWidth, mHeight, radius, mAlphaOut, mWorkspace);
+    }
+
+    @Benchmark
+    public int[] boxBlur() {
+        return BoxBlur.blur(mArgb, 0, mWidth, mWidth, mHeight, radius, mOut, mWorkspace);
+    }
+
+    @Benchmark
+    public int[] stripeBlur() {
+        StripeBlur.blur(mWidth, mHeight, radius, StripeBlur.DEFAULT_STRIPE_ROWS, mSource, mSink, mWorkspace);
+        return mOut;
+    }
+}
@@ -0,0 +1,149 @@
+package com.seagazer.ui.image;
+
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * 虚化结果的内存缓存
+ * <p>
+ * 按来源、虚化半径和降采样倍数缓存虚化后的图片，容量按字节计算，超出后淘汰最久未使用的图片。
+ * 来源为{@link Bitmap}时按对象本身区分且不会阻止其被回收，其他类型(例如图片地址)按equals区分。
+ * 缓存中的图片会被多次返回，使用者不能修改或者回收。
+ */
+public class BlurCache {
+    private static BlurCache sDefault;
+    private final LruCache<Key, Bitmap> mCache;
+
+    /**
+     * @param maxBytes 缓存的最大字节数
+     */
+    public BlurCache(int maxBytes) {
+        mCache = new LruCache<Key, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(Key key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+        };
+    }
+
+    /**
+     * 获取默认的缓存，容量为最大堆内存的1/8
+     *
+     * @return 默认缓存
+     */
+    public static synchronized BlurCache getDefault() {
+        if (sDefault == null) {
+            sDefault = new BlurCache((int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8));
+        }
+        return sDefault;
+    }
+
+    /**
+     * 查找虚化结果
+     *
+     * @param source 来源，原始图片或者能唯一标识原始图片的对象
+     * @param radius 虚化半径
+     * @param scale  降采样倍数
+     * @return 缓存的虚化结果，没有时返回null
+     */
+    @Nullable
+    public Bitmap get(@NonNull Object source, float radius, int scale) {
+        Bitmap bitmap = mCache.get(new Key(source, radius, scale));
+        if (bitmap != null && bitmap.isRecycled()) {
+            remove(source, radius, scale);
+            return null;
+        }
+        return bitmap;
+    }
+
+    /**
+     * 缓存虚化结果
+     *
+     * @param source  来源，原始图片或者能唯一标识原始图片的对象
+     * @param radius  虚化半径
+     * @param scale   降采样倍数
+     * @param blurred 虚化后的图片
+     */
+    public void put(@NonNull Object source, float radius, int scale, @NonNull Bitmap blurred) {
+        mCache.put(new Key(source, radius, scale), blurred);
+    }
+
+    /**
+     * 移除虚化结果
+     *
+     * @param source 来源
+     * @param radius 虚化半径
+     * @param scale  降采样倍数
+     */
+    public void remove(@NonNull Object source, float radius, int scale) {
+        mCache.remove(new Key(source, radius, scale));
+    }
+
+    /**
+     * 按字节数收缩缓存
+     *
+     * @param maxBytes 收缩后的最大字节数，传0清空缓存
+     */
+    public void trimToSize(int maxBytes) {
+        mCache.trimToSize(maxBytes);
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        mCache.evictAll();
+    }
+
+    private static final class Key {
+        private final Object mSource;
+        private final WeakReference<Bitmap> mBitmap;
+        private final int mHash;
+        private final float mRadius;
+        private final int mScale;
+
+        Key(Object source, float radius, int scale) {
+            if (source instanceof Bitmap) {
+                // do not keep the source bitmap alive, compare it by identity
+                mSource = null;
+                mBitmap = new WeakReference<>((Bitmap) source);
+                mHash = System.identityHashCode(source);
+            } else {
+                mSource = source;
+                mBitmap = null;
+                mHash = source.hashCode();
+            }
+            mRadius = radius;
+            mScale = scale;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            if (mHash != key.mHash || mRadius != key.mRadius || mScale != key.mScale) {
+                return false;
+            }
+            if (mBitmap != null) {
+                Bitmap bitmap = mBitmap.get();
+                return key.mBitmap != null && bitmap != null && bitmap == key.mBitmap.get();
+            }
+            return mSource.equals(key.mSource);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * mHash + Float.floatToIntBits(mRadius)) + mScale;
+        }
+    }
+}
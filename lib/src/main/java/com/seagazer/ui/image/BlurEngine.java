@@ -0,0 +1,32 @@
+package com.seagazer.ui.image;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.NonNull;
+
+/**
+ * 虚化引擎
+ * <p>
+ * 所有引擎都至少支持(0, 25]范围内的半径，更大的虚化力度通过{@link BlurPipeline}降采样实现。
+ * 所有引擎都支持ARGB_8888、RGB_565和ALPHA_8格式的图片，ALPHA_8格式只虚化透明度通道，适合阴影和光晕。
+ * 可以通过{@link BlurEngines#best(android.content.Context)}获取当前设备上最快的引擎。
+ */
+public interface BlurEngine {
+
+    /**
+     * 引擎名称，用于持久化选择结果，不同引擎的名称必须不同
+     *
+     * @return 引擎名称
+     */
+    @NonNull
+    String getName();
+
+    /**
+     * 虚化图片
+     *
+     * @param input  原始图片
+     * @param output 输出图片，尺寸和格式必须与原始图片一致，可以与原始图片是同一个对象
+     * @param radius 虚化半径(0, 25]
+     */
+    void blur(@NonNull Bitmap input, @NonNull Bitmap output, float radius);
+}
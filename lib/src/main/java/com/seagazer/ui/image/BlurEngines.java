@@ -0,0 +1,200 @@
+package com.seagazer.ui.image;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import com.seagazer.ui.util.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 虚化引擎的选择器
+ * <p>
+ * 第一次调用{@link #best(Context)}时会用一张小图对所有可用引擎做一次基准测试，
+ * 选出最快的引擎并按设备指纹持久化，之后直接使用保存的结果，系统升级后重新测试。
+ * 基准测试耗时约一百毫秒，建议在后台线程提前调用一次。
+ * 在主线程可以调用{@link #best(Context, OnSelectedListener)}在后台选择引擎，选出后在主线程回调，
+ * 或者调用{@link #current(Context)}立即得到一个可用的引擎，还没有选出时先使用{@link StackBlurEngine}。
+ */
+public final class BlurEngines {
+    private static final String PREFS_NAME = "seagazer_blur_engine";
+    private static final String KEY_ENGINE = "engine";
+    private static final String KEY_FINGERPRINT = "fingerprint";
+    private static final int BENCHMARK_WIDTH = 480;
+    private static final int BENCHMARK_HEIGHT = 270;
+    private static final float BENCHMARK_RADIUS = 15;
+    private static final int BENCHMARK_ROUNDS = 3;
+    // the benchmark runs under SELECT_LOCK, the entry points for the main thread only take STATE_LOCK
+    private static final Object SELECT_LOCK = new Object();
+    private static final Object STATE_LOCK = new Object();
+    private static volatile BlurEngine sBest;
+    private static BlurEngine sFallback;
+    private static boolean isSelecting;
+
+    /**
+     * 引擎选出后的回调，在主线程执行
+     */
+    public interface OnSelectedListener {
+        /**
+         * 引擎已经选出
+         *
+         * @param engine 当前设备上最快的虚化引擎
+         */
+        void onSelected(@NonNull BlurEngine engine);
+    }
+
+    private BlurEngines() {
+    }
+
+    /**
+     * 获取当前设备上最快的虚化引擎
+     *
+     * @param context 上下文
+     * @return 虚化引擎
+     */
+    @NonNull
+    public static BlurEngine best(Context context) {
+        BlurEngine best = sBest;
+        if (best != null) {
+            return best;
+        }
+        synchronized (SELECT_LOCK) {
+            if (sBest == null) {
+                sBest = select(context);
+            }
+            return sBest;
+        }
+    }
+
+    private static BlurEngine select(Context context) {
+        SharedPreferences prefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String saved = prefs.getString(KEY_ENGINE, null);
+        if (saved != null && Build.FINGERPRINT.equals(prefs.getString(KEY_FINGERPRINT, null))) {
+            for (BlurEngine engine : all(context)) {
+                if (engine.getName().equals(saved)) {
+                    return engine;
+                }
+            }
+        }
+        BlurEngine best = benchmark(all(context));
+        prefs.edit()
+                .putString(KEY_ENGINE, best.getName())
+                .putString(KEY_FINGERPRINT, Build.FINGERPRINT)
+                .apply();
+        Logger.d("select blur engine: " + best.getName());
+        return best;
+    }
+
+    /**
+     * 在后台线程选择最快的虚化引擎，已经选出时直接回调，不会在调用线程执行基准测试
+     *
+     * @param context  上下文
+     * @param listener 主线程回调
+     */
+    public static void best(Context context, @NonNull final OnSelectedListener listener) {
+        BlurEngine selected = sBest;
+        if (selected != null && Looper.myLooper() == Looper.getMainLooper()) {
+            listener.onSelected(selected);
+            return;
+        }
+        final Context appContext = context.getApplicationContext();
+        final Handler handler = new Handler(Looper.getMainLooper());
+        BlurService.get(appContext).execute(new Runnable() {
+            @Override
+            public void run() {
+                final BlurEngine engine = best(appContext);
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        listener.onSelected(engine);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 立即获取一个可用的虚化引擎，不会在调用线程执行基准测试
+     * 还没有选出最快的引擎时在后台开始选择，并先返回{@link StackBlurEngine}
+     *
+     * @param context 上下文
+     * @return 虚化引擎
+     */
+    @NonNull
+    public static BlurEngine current(Context context) {
+        BlurEngine best = sBest;
+        if (best != null) {
+            return best;
+        }
+        synchronized (STATE_LOCK) {
+            if (sFallback == null) {
+                sFallback = new StackBlurEngine();
+            }
+            if (isSelecting) {
+                return sFallback;
+            }
+            isSelecting = true;
+        }
+        final Context appContext = context.getApplicationContext();
+        BlurService.get(appContext).execute(new Runnable() {
+            @Override
+            public void run() {
+                best(appContext);
+            }
+        });
+        return sFallback;
+    }
+
+    /**
+     * 获取所有候选的虚化引擎
+     *
+     * @param context 上下文
+     * @return 候选引擎，第一个为兜底引擎
+     */
+    @NonNull
+    public static List<BlurEngine> all(Context context) {
+        List<BlurEngine> engines = new ArrayList<>();
+        engines.add(new StackBlurEngine());
+        engines.add(new BoxBlurEngine());
+        engines.add(new RenderScriptBlurEngine(context));
+        return engines;
+    }
+
+    private static BlurEngine benchmark(List<BlurEngine> engines) {
+        Bitmap input = Bitmap.createBitmap(BENCHMARK_WIDTH, BENCHMARK_HEIGHT, Bitmap.Config.ARGB_8888);
+        Bitmap output = Bitmap.createBitmap(BENCHMARK_WIDTH, BENCHMARK_HEIGHT, Bitmap.Config.ARGB_8888);
+        input.eraseColor(Color.GRAY);
+        BlurEngine best = engines.get(0);
+        long bestCost = Long.MAX_VALUE;
+        for (BlurEngine engine : engines) {
+            try {
+                // warm up, the first call pays for the engine setup
+                engine.blur(input, output, BENCHMARK_RADIUS);
+                long start = SystemClock.elapsedRealtimeNanos();
+                for (int i = 0; i < BENCHMARK_ROUNDS; i++) {
+                    engine.blur(input, output, BENCHMARK_RADIUS);
+                }
+                long cost = SystemClock.elapsedRealtimeNanos() - start;
+                Logger.d(engine.getName() + " cost " + cost / BENCHMARK_ROUNDS / 1000 + "us");
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    best = engine;
+                }
+            } catch (RuntimeException e) {
+                Logger.w(engine.getName() + " is unavailable: " + e.getMessage());
+            }
+        }
+        input.recycle();
+        output.recycle();
+        return best;
+    }
+}
@@ -0,0 +1,171 @@
+package com.seagazer.ui.image;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+import androidx.annotation.NonNull;
+
+/**
+ * 降采样加多次虚化的处理流程，用于突破{@link BlurEngine}单次虚化半径最大为25的限制
+ * <p>
+ * 图片缩小为原来的1/scale后，半径r的虚化相当于原图上半径r*scale的虚化；
+ * 同一半径连续虚化n次，效果相当于半径r*sqrt(n)的一次虚化。
+ * 根据需要的虚化半径先选择降采样倍数，倍数达到上限后再增加虚化次数，
+ * 例如原图半径100的虚化只需要在1/16面积的图片上做一次半径25的虚化。
+ * <p>
+ * RGB_565和ALPHA_8格式的图片输出相同格式的结果。RGB_565只在流程的两端转换：
+ * 降采样时直接绘制到ARGB_8888的工作图片上，所有虚化完成后再转换回RGB_565。
+ */
+public class BlurPipeline {
+    /**
+     * 单次虚化支持的最大半径
+     */
+    public static final float MAX_PASS_RADIUS = 25;
+    private static final int MAX_SCALE = 16;
+
+    /**
+     * 虚化方案
+     */
+    public static final class Plan {
+        /**
+         * 降采样倍数，宽高均缩小为原来的1/scale
+         */
+        public final int scale;
+        /**
+         * 降采样后每次虚化的半径
+         */
+        public final float radius;
+        /**
+         * 虚化次数，为0时不需要虚化
+         */
+        public final int passes;
+
+        Plan(int scale, float radius, int passes) {
+            this.scale = scale;
+            this.radius = radius;
+            this.passes = passes;
+        }
+    }
+
+    /**
+     * 根据原图上的虚化半径计算虚化方案
+     *
+     * @param radius 原图上的虚化半径
+     * @return 虚化方案
+     */
+    public static Plan plan(float radius) {
+        return plan(radius, 1);
+    }
+
+    /**
+     * 根据原图上的虚化半径计算虚化方案
+     *
+     * @param radius   原图上的虚化半径
+     * @param minScale 最小降采样倍数
+     * @return 虚化方案
+     */
+    public static Plan plan(float radius, int minScale) {
+        int scale = Math.max(1, minScale);
+        if (radius <= 0) {
+            return new Plan(scale, 0, 0);
+        }
+        while (radius / scale > MAX_PASS_RADIUS && scale < MAX_SCALE) {
+            scale *= 2;
+        }
+        float scaledRadius = radius / scale;
+        int passes = 1;
+        if (scaledRadius > MAX_PASS_RADIUS) {
+            float ratio = scaledRadius / MAX_PASS_RADIUS;
+            passes = (int) Math.ceil(ratio * ratio);
+        }
+        return new Plan(scale, scaledRadius / (float) Math.sqrt(passes), passes);
+    }
+
+    /**
+     * 按虚化方案处理图片，返回的图片尺寸为原图的1/scale，绘制时需要放大scale倍
+     *
+     * @param context 上下文
+     * @param bitmap  原始图片
+     * @param radius  原图上的虚化半径
+     * @return 降采样后虚化的图片
+     */
+    public static Bitmap blur(Context context, @NonNull Bitmap bitmap, float radius) {
+        return blur(context, bitmap, plan(radius));
+    }
+
+    /**
+     * 处理图片，缓存中已有相同来源、半径和降采样倍数的结果时直接返回
+     *
+     * @param context 上下文
+     * @param key     来源，原始图片或者能唯一标识原始图片的对象
+     * @param bitmap  原始图片
+     * @param radius  原图上的虚化半径
+     * @param cache   虚化结果缓存
+     * @return 降采样后虚化的图片，由缓存持有，不能修改或回收
+     */
+    public static Bitmap blur(Context context, @NonNull Object key, @NonNull Bitmap bitmap, float radius,
+                              @NonNull BlurCache cache) {
+        Plan plan = plan(radius);
+        Bitmap blurred = cache.get(key, radius, plan.scale);
+        if (blurred == null) {
+            blurred = blur(context, bitmap, plan);
+            cache.put(key, radius, plan.scale, blurred);
+        }
+        return blurred;
+    }
+
+    /**
+     * 按虚化方案处理图片，返回的图片尺寸为原图的1/scale，绘制时需要放大scale倍
+     *
+     * @param context 上下文
+     * @param bitmap  原始图片
+     * @param plan    虚化方案
+     * @return 降采样后虚化的图片
+     */
+    public static Bitmap blur(Context context, @NonNull Bitmap bitmap, @NonNull Plan plan) {
+        return blur(BlurEngines.best(context), bitmap, plan);
+    }
+
+    /**
+     * 使用指定的引擎按虚化方案处理图片，返回的图片尺寸为原图的1/scale，绘制时需要放大scale倍
+     *
+     * @param engine 虚化引擎
+     * @param bitmap 原始图片，支持ARGB_8888、RGB_565和ALPHA_8格式
+     * @param plan   虚化方案
+     * @return 降采样后虚化的图片，格式为RGB_565或者ALPHA_8的原图返回相同格式，其他格式返回ARGB_8888
+     */
+    public static Bitmap blur(@NonNull BlurEngine engine, @NonNull Bitmap bitmap, @NonNull Plan plan) {
+        int width = Math.max(1, bitmap.getWidth() / plan.scale);
+        int height = Math.max(1, bitmap.getHeight() / plan.scale);
+        if (plan.passes == 0) {
+            return Bitmap.createScaledBitmap(bitmap, width, height, true);
+        }
+        Bitmap input;
+        if (bitmap.getConfig() == Bitmap.Config.RGB_565) {
+            // convert while downscaling, so the passes run on ARGB_8888 without any more conversions
+            input = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(input);
+            canvas.scale((float) width / bitmap.getWidth(), (float) height / bitmap.getHeight());
+            canvas.drawBitmap(bitmap, 0, 0, new Paint(Paint.FILTER_BITMAP_FLAG));
+        } else {
+            input = Bitmap.createScaledBitmap(bitmap, width, height, true);
+        }
+        Bitmap.Config config = input.getConfig() == Bitmap.Config.ALPHA_8 ? Bitmap.Config.ALPHA_8 : Bitmap.Config.ARGB_8888;
+        Bitmap output = Bitmap.createBitmap(width, height, config);
+        engine.blur(input, output, plan.radius);
+        for (int i = 1; i < plan.passes; i++) {
+            engine.blur(output, output, plan.radius);
+        }
+        if (input != bitmap) {
+            input.recycle();
+        }
+        if (bitmap.getConfig() == Bitmap.Config.RGB_565) {
+            Bitmap opaque = output.copy(Bitmap.Config.RGB_565, false);
+            output.recycle();
+            return opaque;
+        }
+        return output;
+    }
+}
@@ -0,0 +1,186 @@
+package com.seagazer.ui.image;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+import androidx.annotation.FloatRange;
+import androidx.annotation.IntRange;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * 预先计算的虚化金字塔，用于虚化半径的动画
+ * <p>
+ * 创建时按半径从0到最大值均匀生成若干层降采样虚化的图片，第0层即原图，
+ * 绘制任意半径时只需叠加相邻两层并按比例淡入上层，不再每帧重新虚化，
+ * 一次从清晰到虚化的动画只需要创建一次金字塔。
+ * 可以通过{@link #setBlurRadius(float)}设置虚化半径，也可以通过{@link #setLevel(int)}按0到10000的比例设置，
+ * 便于配合属性动画或者{@link android.widget.ImageView#setImageLevel(int)}使用。
+ * 创建金字塔需要多次虚化，可以在后台线程创建后再交给UI使用。
+ */
+public class BlurPyramid extends Drawable {
+    private static final int DEFAULT_LEVELS = 5;
+    private static final int MAX_LEVEL = 10000;
+    private static final int MIN_SCALE = 4;
+    private static final float MIN_SCALED_RADIUS = 2;
+    private final Bitmap[] mLevels;
+    private final float[] mRadii;
+    private final Rect mSrcRect = new Rect();
+    private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Paint mFadePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final boolean isOpaque;
+    private int mAlpha = 255;
+    private int mLower;
+    private float mFraction;
+    private float mBlurRadius;
+
+    /**
+     * 使用当前设备上最快的虚化引擎创建金字塔，还没有选出最快的引擎时使用{@link BlurEngines#current(Context)}的兜底引擎，
+     * 不会在调用线程执行基准测试
+     *
+     * @param context   上下文
+     * @param source    原始图片，作为第0层直接绘制，使用期间不能被修改或回收
+     * @param maxRadius 原图上的最大虚化半径
+     */
+    public BlurPyramid(Context context, @NonNull Bitmap source, float maxRadius) {
+        this(BlurEngines.current(context), source, maxRadius, DEFAULT_LEVELS);
+    }
+
+    /**
+     * 创建金字塔
+     *
+     * @param engine    虚化引擎
+     * @param source    原始图片，作为第0层直接绘制，使用期间不能被修改或回收
+     * @param maxRadius 原图上的最大虚化半径
+     * @param levels    层数，包括原图，层数越多中间半径的效果越接近真实虚化
+     */
+    public BlurPyramid(@NonNull BlurEngine engine, @NonNull Bitmap source, float maxRadius,
+                       @IntRange(from = 2) int levels) {
+        if (levels < 2) {
+            throw new IllegalArgumentException("The levels " + levels + " must be at least 2");
+        }
+        mLevels = new Bitmap[levels];
+        mRadii = new float[levels];
+        mLevels[0] = source;
+        for (int i = 1; i < levels; i++) {
+            float radius = maxRadius * i / (levels - 1);
+            mRadii[i] = radius;
+            mLevels[i] = BlurPipeline.blur(engine, source, BlurPipeline.plan(radius, minScale(radius)));
+        }
+        isOpaque = !source.hasAlpha();
+    }
+
+    /**
+     * 选择降采样倍数，在保证降采样后的半径不会过小的前提下尽量缩小，以减少每层的内存
+     */
+    private static int minScale(float radius) {
+        int scale = 1;
+        while (scale < MIN_SCALE && radius / (scale * 2) >= MIN_SCALED_RADIUS) {
+            scale *= 2;
+        }
+        return scale;
+    }
+
+    /**
+     * 设置虚化半径，介于相邻两层之间时叠加两层
+     *
+     * @param radius 原图上的虚化半径，超出范围时按最近的层绘制
+     */
+    public void setBlurRadius(@FloatRange(from = 0) float radius) {
+        int top = mLevels.length - 1;
+        float clamped = Math.max(0, Math.min(radius, mRadii[top]));
+        int lower = 0;
+        while (lower < top - 1 && mRadii[lower + 1] <= clamped) {
+            lower++;
+        }
+        float span = mRadii[lower + 1] - mRadii[lower];
+        mLower = lower;
+        mFraction = span > 0 ? Math.min(1, (clamped - mRadii[lower]) / span) : 0;
+        mBlurRadius = radius;
+        invalidateSelf();
+    }
+
+    public float getBlurRadius() {
+        return mBlurRadius;
+    }
+
+    /**
+     * 获取最大虚化半径
+     *
+     * @return 原图上的最大虚化半径
+     */
+    public float getMaxBlurRadius() {
+        return mRadii[mLevels.length - 1];
+    }
+
+    @Override
+    protected boolean onLevelChange(int level) {
+        setBlurRadius(getMaxBlurRadius() * level / MAX_LEVEL);
+        return true;
+    }
+
+    /**
+     * 回收生成的虚化图片，原图由调用者管理，回收后不能再绘制
+     */
+    public void recycle() {
+        for (int i = 1; i < mLevels.length; i++) {
+            mLevels[i].recycle();
+        }
+    }
+
+    @Override
+    public void draw(@NonNull Canvas canvas) {
+        Rect bounds = getBounds();
+        drawLevel(canvas, mLevels[mLower], bounds, mPaint);
+        if (mFraction > 0) {
+            // fade in the next level over the lower one
+            mFadePaint.setAlpha(Math.round(mAlpha * mFraction));
+            drawLevel(canvas, mLevels[mLower + 1], bounds, mFadePaint);
+        }
+    }
+
+    private void drawLevel(Canvas canvas, Bitmap level, Rect bounds, Paint paint) {
+        mSrcRect.set(0, 0, level.getWidth(), level.getHeight());
+        canvas.drawBitmap(level, mSrcRect, bounds, paint);
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return mLevels[0].getWidth();
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return mLevels[0].getHeight();
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        mAlpha = alpha;
+        mPaint.setAlpha(alpha);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getAlpha() {
+        return mAlpha;
+    }
+
+    @Override
+    public void setColorFilter(@Nullable ColorFilter colorFilter) {
+        mPaint.setColorFilter(colorFilter);
+        mFadePaint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return isOpaque && mAlpha == 255 ? PixelFormat.OPAQUE : PixelFormat.TRANSLUCENT;
+    }
+}
@@ -0,0 +1,276 @@
+package com.seagazer.ui.image;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.seagazer.ui.util.Logger;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 异步虚化服务
+ * <p>
+ * 虚化任务在后台线程执行，结果在主线程回调，返回的{@link Request}可以随时取消。
+ * 提交任务时可以指定一个目标对象(例如需要显示虚化背景的View)，同一目标只保留最新的任务，
+ * 之前还在排队的任务会被取消，正在执行的任务完成后结果会被丢弃，适合焦点快速移动时不断切换虚化背景的场景。
+ */
+public class BlurService {
+    private static final int MAX_WORKERS = 2;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+    private static BlurService sInstance;
+    private final Context mContext;
+    private final Handler mMainHandler;
+    private final ThreadPoolExecutor mExecutor;
+    private final Map<Object, Request> mLatest = new HashMap<>();
+
+    /**
+     * 虚化结果回调，在主线程执行
+     */
+    public interface Callback {
+        /**
+         * 虚化完成
+         *
+         * @param result 虚化后的图片
+         */
+        void onBlurred(@NonNull Bitmap result);
+    }
+
+    /**
+     * 需要知道虚化失败的回调，在主线程执行
+     */
+    public interface FailureCallback extends Callback {
+        /**
+         * 任务抛出异常或者没有返回结果，请求已经结束，被取消的请求不会回调
+         */
+        void onFailed();
+    }
+
+    /**
+     * 在后台线程执行的虚化任务
+     */
+    public interface Job {
+        /**
+         * 执行虚化
+         *
+         * @param engine 当前设备上最快的虚化引擎
+         * @return 虚化后的图片，返回null时只回调{@link FailureCallback#onFailed()}
+         */
+        @Nullable
+        Bitmap run(@NonNull BlurEngine engine);
+    }
+
+    /**
+     * 虚化请求的句柄
+     */
+    public static final class Request {
+        private final BlurService mService;
+        private final Object mTarget;
+        private volatile boolean isCanceled;
+        private volatile Future<?> mFuture;
+
+        Request(BlurService service, Object target) {
+            this.mService = service;
+            this.mTarget = target;
+        }
+
+        /**
+         * 取消请求，还未执行的任务不再执行，已经执行的任务不再回调
+         */
+        public void cancel() {
+            isCanceled = true;
+            Future<?> future = mFuture;
+            if (future != null) {
+                future.cancel(false);
+            }
+            mService.finish(this);
+        }
+
+        public boolean isCanceled() {
+            return isCanceled;
+        }
+    }
+
+    private BlurService(Context context) {
+        mContext = context.getApplicationContext();
+        mMainHandler = new Handler(Looper.getMainLooper());
+        mExecutor = new ThreadPoolExecutor(MAX_WORKERS, MAX_WORKERS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, "BlurService #" + mCount.incrementAndGet());
+            }
+        });
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * 获取进程内唯一的实例
+     *
+     * @param context 上下文
+     * @return 异步虚化服务
+     */
+    public static synchronized BlurService get(Context context) {
+        if (sInstance == null) {
+            sInstance = new BlurService(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * 异步虚化图片，结果为降采样后的图片，见{@link BlurPipeline#blur(BlurEngine, Bitmap, BlurPipeline.Plan)}
+     * 结果按原始图片缓存在{@link BlurCache#getDefault()}中，再次请求时直接回调
+     *
+     * @param target   目标对象，同一目标只执行最新的请求，为null时不合并
+     * @param source   原始图片，虚化过程中不能被修改或回收
+     * @param radius   原图上的虚化半径
+     * @param callback 主线程回调
+     * @return 请求句柄
+     */
+    public Request blur(@Nullable Object target, @NonNull Bitmap source, float radius, @NonNull Callback callback) {
+        return blur(target, source, source, radius, callback);
+    }
+
+    /**
+     * 异步虚化图片，结果为降采样后的图片，见{@link BlurPipeline#blur(BlurEngine, Bitmap, BlurPipeline.Plan)}
+     * 结果按来源缓存在{@link BlurCache#getDefault()}中，再次请求时直接回调
+     *
+     * @param target   目标对象，同一目标只执行最新的请求，为null时不合并
+     * @param key      来源，原始图片或者能唯一标识原始图片的对象
+     * @param source   原始图片，虚化过程中不能被修改或回收
+     * @param radius   原图上的虚化半径
+     * @param callback 主线程回调，结果由缓存持有，不能修改或回收
+     * @return 请求句柄
+     */
+    public Request blur(@Nullable Object target, @NonNull final Object key, @NonNull final Bitmap source,
+                        final float radius, @NonNull final Callback callback) {
+        final BlurCache cache = BlurCache.getDefault();
+        final BlurPipeline.Plan plan = BlurPipeline.plan(radius);
+        final Bitmap cached = cache.get(key, radius, plan.scale);
+        if (cached != null) {
+            final Request request = new Request(this, target);
+            if (target != null) {
+                cancel(target);
+            }
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                callback.onBlurred(cached);
+            } else {
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!request.isCanceled()) {
+                            callback.onBlurred(cached);
+                        }
+                    }
+                });
+            }
+            return request;
+        }
+        return submit(target, new Job() {
+            @Override
+            public Bitmap run(@NonNull BlurEngine engine) {
+                Bitmap blurred = BlurPipeline.blur(engine, source, plan);
+                cache.put(key, radius, plan.scale, blurred);
+                return blurred;
+            }
+        }, callback);
+    }
+
+    /**
+     * 提交自定义的虚化任务
+     *
+     * @param target   目标对象，同一目标只执行最新的请求，为null时不合并
+     * @param job      后台执行的虚化任务
+     * @param callback 主线程回调
+     * @return 请求句柄
+     */
+    public Request submit(@Nullable final Object target, @NonNull final Job job, @NonNull final Callback callback) {
+        final Request request = new Request(this, target);
+        synchronized (this) {
+            if (target != null) {
+                Request previous = mLatest.put(target, request);
+                if (previous != null) {
+                    previous.cancel();
+                }
+            }
+            request.mFuture = mExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    if (request.isCanceled()) {
+                        return;
+                    }
+                    Bitmap blurred;
+                    try {
+                        blurred = job.run(BlurEngines.best(mContext));
+                    } catch (RuntimeException e) {
+                        Logger.e("blur failed: " + e.getMessage());
+                        blurred = null;
+                    }
+                    final Bitmap result = blurred;
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            finish(request);
+                            if (request.isCanceled()) {
+                                return;
+                            }
+                            if (result != null) {
+                                callback.onBlurred(result);
+                            } else if (callback instanceof FailureCallback) {
+                                ((FailureCallback) callback).onFailed();
+                            }
+                        }
+                    });
+                }
+            });
+        }
+        return request;
+    }
+
+    /**
+     * 在虚化线程执行任务，不合并也不回调
+     *
+     * @param task 后台任务
+     */
+    void execute(@NonNull Runnable task) {
+        mExecutor.execute(task);
+    }
+
+    /**
+     * 取消目标对象的请求
+     *
+     * @param target 目标对象
+     */
+    public synchronized void cancel(@NonNull Object target) {
+        Request request = mLatest.get(target);
+        if (request != null) {
+            request.cancel();
+        }
+    }
+
+    private synchronized void finish(Request request) {
+        if (request.mTarget != null && mLatest.get(request.mTarget) == request) {
+            mLatest.remove(request.mTarget);
+        }
+    }
+}
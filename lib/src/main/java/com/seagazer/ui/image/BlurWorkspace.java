@@ -0,0 +1,229 @@
+package com.seagazer.ui.image;
+
+/**
+ * {@link FastBlur}和{@link BoxBlur}的工作缓冲区
+ * <p>
+ * 持有模糊过程中需要的像素数组、通道数组、索引表、除法查找表和栈缓冲。
+ * 缓冲只在图片尺寸或者模糊半径超过已有容量时才重新分配，
+ * 因此对同一尺寸的图片重复模糊不会产生新的内存分配。
+ * <p>
+ * 通过{@link #setParallelism(int)}可以开启多线程模糊，横向和纵向两遍计算会被切分成多个条带并行执行，
+ * 结果与单线程完全一致。
+ * <p>
+ * 非线程安全，同一时刻只能被一次模糊调用使用。
+ */
+public class BlurWorkspace {
+    int[] pix;
+    int[] r;
+    int[] g;
+    int[] b;
+    int[] vminX;
+    int[] vminY;
+    int[] dv;
+    int[][][] stacks;
+    long[][] packedStacks;
+    byte[] alphaPix;
+    byte[] alpha;
+    int[][] alphaStacks;
+    private final int[][] mBoxDv = new int[3][];
+    private final int[] mBoxDiv = new int[3];
+    private int mDvRadius = -1;
+    private int mParallelism = 1;
+
+    public BlurWorkspace() {
+    }
+
+    /**
+     * 预先按尺寸和半径分配缓冲
+     *
+     * @param width  图片宽度
+     * @param height 图片高度
+     * @param radius 模糊半径
+     */
+    public BlurWorkspace(int width, int height, int radius) {
+        ensure(width, height, radius);
+    }
+
+    /**
+     * 设置模糊计算使用的线程数，默认为1即在调用线程上串行计算
+     *
+     * @param parallelism 线程数，不能小于1
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be at least 1, but was " + parallelism);
+        }
+        mParallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return mParallelism;
+    }
+
+    /**
+     * 确保缓冲足够容纳指定尺寸和半径，容量不足时才重新分配
+     *
+     * @param width  图片宽度
+     * @param height 图片高度
+     * @param radius 模糊半径
+     */
+    void ensure(int width, int height, int radius) {
+        int wh = width * height;
+        if (b == null || b.length < wh) {
+            r = new int[wh];
+            g = new int[wh];
+            b = new int[wh];
+        }
+        int div = radius + radius + 1;
+        if (stacks == null || stacks.length < mParallelism || stacks[0].length < div) {
+            stacks = new int[mParallelism][div][3];
+        }
+        ensureTables(width, height, radius);
+    }
+
+    /**
+     * 确保打包通道模糊的缓冲足够容纳指定尺寸和半径，中间结果只需要一块打包的像素数组
+     *
+     * @param width  图片宽度
+     * @param height 图片高度
+     * @param radius 模糊半径
+     */
+    void ensurePacked(int width, int height, int radius) {
+        int wh = width * height;
+        if (r == null || r.length < wh) {
+            r = new int[wh];
+        }
+        int size = 2 * (radius + radius + 1);
+        if (packedStacks == null || packedStacks.length < mParallelism || packedStacks[0].length < size) {
+            packedStacks = new long[mParallelism][size];
+        }
+        ensureTables(width, height, radius);
+    }
+
+    /**
+     * 确保透明度通道模糊的缓冲足够容纳指定尺寸和半径，中间结果按字节保存
+     *
+     * @param width  图片宽度
+     * @param height 图片高度
+     * @param radius 模糊半径
+     */
+    void ensureAlpha(int width, int height, int radius) {
+        int wh = width * height;
+        if (alpha == null || alpha.length < wh) {
+            alpha = new byte[wh];
+        }
+        int div = radius + radius + 1;
+        if (alphaStacks == null || alphaStacks.length < mParallelism || alphaStacks[0].length < div) {
+            alphaStacks = new int[mParallelism][div];
+        }
+        ensureTables(width, height, radius);
+    }
+
+    private void ensureTables(int width, int height, int radius) {
+        if (vminX == null || vminX.length < width) {
+            vminX = new int[width];
+        }
+        if (vminY == null || vminY.length < height) {
+            vminY = new int[height];
+        }
+        if (radius != mDvRadius) {
+            int div = radius + radius + 1;
+            int divsum = (div + 1) >> 1;
+            divsum *= divsum;
+            int size = 256 * divsum;
+            if (dv == null || dv.length < size) {
+                dv = new int[size];
+            }
+            for (int i = 0; i < size; i++) {
+                dv[i] = (i / divsum);
+            }
+            mDvRadius = radius;
+        }
+    }
+
+    /**
+     * 确保均值模糊的两块中间缓冲足够容纳指定尺寸
+     *
+     * @param width  图片宽度
+     * @param height 图片高度
+     */
+    void ensureBox(int width, int height) {
+        int wh = width * height;
+        if (g == null || g.length < wh) {
+            r = new int[wh];
+            g = new int[wh];
+        }
+    }
+
+    /**
+     * 获取均值模糊的除法查找表，每一次均值模糊各自缓存一份，窗口大小不变时直接复用
+     *
+     * @param pass 第几次均值模糊
+     * @param div  窗口大小
+     * @return 下标为窗口内的通道和，值为均值的查找表
+     */
+    int[] boxDivisions(int pass, int div) {
+        int[] dv = mBoxDv[pass];
+        if (dv == null || mBoxDiv[pass] != div) {
+            int size = 256 * div;
+            if (dv == null || dv.length < size) {
+                dv = new int[size];
+                mBoxDv[pass] = dv;
+            }
+            for (int i = 0; i < size; i++) {
+                dv[i] = (i / div);
+            }
+            mBoxDiv[pass] = div;
+        }
+        return dv;
+    }
+
+    /**
+     * 获取用于读取图片像素的数组，只有在Bitmap和像素数组之间转换时才需要
+     *
+     * @param size 像素数量
+     * @return 至少能容纳size个像素的数组
+     */
+    int[] obtainPixels(int size) {
+        if (pix == null || pix.length < size) {
+            pix = new int[size];
+        }
+        return pix;
+    }
+
+    /**
+     * 获取用于读取ALPHA_8图片像素的数组
+     *
+     * @param size 字节数
+     * @return 至少能容纳size个字节的数组
+     */
+    byte[] obtainAlphaPixels(int size) {
+        if (alphaPix == null || alphaPix.length < size) {
+            alphaPix = new byte[size];
+        }
+        return alphaPix;
+    }
+
+    /**
+     * 释放所有缓冲，下次使用时重新分配
+     */
+    public void release() {
+        pix = null;
+        r = null;
+        g = null;
+        b = null;
+        vminX = null;
+        vminY = null;
+        dv = null;
+        stacks = null;
+        packedStacks = null;
+        alphaPix = null;
+        alpha = null;
+        alphaStacks = null;
+        mDvRadius = -1;
+        for (int i = 0; i < mBoxDv.length; i++) {
+            mBoxDv[i] = null;
+            mBoxDiv[i] = 0;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.seagazer.ui.image;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.Nullable;
+
+/**
+ * 与半径无关的快速虚化
+ * <p>
+ * 用三次连续的均值模糊近似高斯模糊，每次均值模糊都用滑动窗口求和，
+ * 每个像素的计算量与半径无关，半径从5到200耗时基本不变。
+ * 半径与高斯标准差的换算与RenderScript保持一致，因此效果与{@link RenderScriptBlur}接近。
+ * 与{@link FastBlur}一样保留原图的透明度，{@link #blurWithAlpha(int[], int, int, int, int, int, int[], BlurWorkspace)}
+ * 与{@link FastBlur#blurPacked(int[], int, int, int, int, int, int[], BlurWorkspace)}一样让透明度通道也参与虚化。
+ */
+public class BoxBlur {
+    private static final int PASSES = 3;
+
+    /**
+     * 使用可复用的工作缓冲原地虚化图片
+     *
+     * @param bitmap    需要虚化的图片，必须是可修改的，ALPHA_8格式时按{@link FastBlur}只虚化透明度通道
+     * @param radius    虚化半径
+     * @param workspace 工作缓冲
+     * @return 虚化后的图片，即传入的bitmap，半径小于1时返回null
+     */
+    public static Bitmap blur(Bitmap bitmap, int radius, BlurWorkspace workspace) {
+        if (radius < 1) {
+            return (null);
+        }
+        if (bitmap.getConfig() == Bitmap.Config.ALPHA_8) {
+            return FastBlur.blur(bitmap, radius, workspace);
+        }
+        int w = bitmap.getWidth();
+        int h = bitmap.getHeight();
+        int[] pix = workspace.obtainPixels(w * h);
+        bitmap.getPixels(pix, 0, w, 0, 0, w, h);
+        blur(pix, 0, w, w, h, radius, pix, workspace);
+        bitmap.setPixels(pix, 0, w, 0, 0, w, h);
+        return (bitmap);
+    }
+
+    /**
+     * 原地虚化像素数组
+     *
+     * @param argb   按行连续存放的ARGB像素
+     * @param width  图片宽度
+     * @param height 图片高度
+     * @param radius 虚化半径
+     * @return 虚化后的像素，即传入的argb，半径小于1时返回null
+     */
+    public static int[] blur(int[] argb, int width, int height, int radius) {
+        return blur(argb, 0, width, width, height, radius, null, new BlurWorkspace());
+    }
+
+    /**
+     * 虚化像素数组
+     *
+     * @param argb      ARGB像素
+     * @param offset    第一个像素在数组中的位置
+     * @param stride    相邻两行像素在数组中的间隔，不能小于width
+     * @param width     图片宽度
+     * @param height    图片高度
+     * @param radius    虚化半径
+     * @param out       输出数组，按照与输入相同的offset和stride写入，为null时原地虚化
+     * @param workspace 工作缓冲，为null时临时创建
+     * @return 虚化后的像素，即out或者argb，半径小于1时返回null
+     */
+    public static int[] blur(int[] argb, int offset, int stride, int width, int height, int radius,
+                             @Nullable int[] out, @Nullable BlurWorkspace workspace) {
+        if (radius < 1) {
+            return (null);
+        }
+        if (stride < width) {
+            throw new IllegalArgumentException("The stride " + stride + " must be at least the width " + width);
+        }
+        if (out == null) {
+            out = argb;
+        }
+        if (workspace == null) {
+            workspace = new BlurWorkspace();
+        }
+        workspace.ensureBox(width, height);
+        boxBlur(argb, out, offset, stride, width, height, radius, false, workspace);
+        return out;
+    }
+
+    /**
+     * 虚化像素数组，透明度通道也参与虚化，带透明度的像素需要预乘透明度，否则透明像素的颜色会渗入相邻像素
+     *
+     * @param argb      ARGB像素
+     * @param offset    第一个像素在数组中的位置
+     * @param stride    相邻两行像素在数组中的间隔，不能小于width
+     * @param width     图片宽度
+     * @param height    图片高度
+     * @param radius    虚化半径
+     * @param out       输出数组，按照与输入相同的offset和stride写入，为null时原地虚化
+     * @param workspace 工作缓冲，为null时临时创建
+     * @return 虚化后的像素，即out或者argb，半径小于1时返回null
+     */
+    public static int[] blurWithAlpha(int[] argb, int offset, int stride, int width, int height, int radius,
+                                      @Nullable int[] out, @Nullable BlurWorkspace workspace) {
+        if (radius < 1) {
+            return (null);
+        }
+        if (stride < width) {
+            throw new IllegalArgumentException("The stride " + stride + " must be at least the width " + width);
+        }
+        if (out == null) {
+            out = argb;
+        }
+        if (workspace == null) {
+            workspace = new BlurWorkspace();
+        }
+        workspace.ensureBox(width, height);
+        boxBlur(argb, out, offset, stride, width, height, radius, true, workspace);
+        return out;
+    }
+
+    private static void boxBlur(final int[] src, final int[] out, final int offset, final int stride,
+                                final int w, final int h, int radius, final boolean blurAlpha,
+                                BlurWorkspace workspace) {
+        int[] sizes = boxSizes(0.4f * radius + 0.6f);
+        final int[] first = workspace.r;
+        final int[] second = workspace.g;
+        int bands = Math.min(workspace.getParallelism(), Math.min(w, h));
+        for (int pass = 0; pass < PASSES; pass++) {
+            final int boxRadius = sizes[pass] / 2;
+            final int[] dv = workspace.boxDivisions(pass, sizes[pass]);
+            // the first pass reads the source, later passes read the previous result
+            final int[] in = pass == 0 ? src : second;
+            final int inOffset = pass == 0 ? offset : 0;
+            final int inStride = pass == 0 ? stride : w;
+            // the last pass writes the output and restores the source alpha unless the alpha is blurred too
+            final boolean last = pass == PASSES - 1;
+            final int[] alpha = last && !blurAlpha ? src : null;
+            final int[] dst = last ? out : second;
+            final int dstOffset = last ? offset : 0;
+            final int dstStride = last ? stride : w;
+            if (bands <= 1) {
+                blurRows(in, inOffset, inStride, first, w, boxRadius, dv, blurAlpha, 0, h);
+                blurColumns(first, dst, dstOffset, dstStride, alpha, blurAlpha, w, h, boxRadius, dv, 0, w);
+            } else {
+                FastBlur.runBands(bands, h, new FastBlur.BandRunner() {
+                    @Override
+                    public void run(int band, int start, int end) {
+                        blurRows(in, inOffset, inStride, first, w, boxRadius, dv, blurAlpha, start, end);
+                    }
+                });
+                FastBlur.runBands(bands, w, new FastBlur.BandRunner() {
+                    @Override
+                    public void run(int band, int start, int end) {
+                        blurColumns(first, dst, dstOffset, dstStride, alpha, blurAlpha, w, h, boxRadius, dv, start, end);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * 计算三次均值模糊的窗口大小，使其叠加后的方差与指定标准差的高斯模糊一致
+     *
+     * @param sigma 高斯模糊的标准差
+     * @return 每次均值模糊的窗口大小，均为奇数
+     */
+    private static int[] boxSizes(float sigma) {
+        float variance = 12 * sigma * sigma;
+        int lower = (int) Math.floor(Math.sqrt(variance / PASSES + 1));
+        if (lower % 2 == 0) {
+            lower--;
+        }
+        int upper = lower + 2;
+        int lowerCount = Math.round((variance - PASSES * lower * lower - 4 * PASSES * lower - 3 * PASSES)
+                / (-4f * lower - 4));
+        int[] sizes = new int[PASSES];
+        for (int i = 0; i < PASSES; i++) {
+            sizes[i] = i < lowerCount ? lower : upper;
+        }
+        return sizes;
+    }
+
+    private static void blurRows(int[] in, int offset, int stride, int[] out, int w, int radius, int[] dv,
+                                 boolean blurAlpha, int yStart, int yEnd) {
+        int wm = w - 1;
+        int asum, rsum, gsum, bsum, x, y, i, p, line, yi;
+        for (y = yStart; y < yEnd; y++) {
+            line = offset + y * stride;
+            asum = rsum = gsum = bsum = 0;
+            for (i = -radius; i <= radius; i++) {
+                p = in[line + Math.min(wm, Math.max(i, 0))];
+                asum += p >>> 24;
+                rsum += (p & 0xff0000) >> 16;
+                gsum += (p & 0x00ff00) >> 8;
+                bsum += (p & 0x0000ff);
+            }
+            yi = y * w;
+            for (x = 0; x < w; x++) {
+                out[yi++] = (blurAlpha ? dv[asum] << 24 : 0xff000000) | (dv[rsum] << 16) | (dv[gsum] << 8) | dv[bsum];
+                // slide the window: add the entering pixel and remove the leaving one
+                p = in[line + Math.min(wm, x + radius + 1)];
+                asum += p >>> 24;
+                rsum += (p & 0xff0000) >> 16;
+                gsum += (p & 0x00ff00) >> 8;
+                bsum += (p & 0x0000ff);
+                p = in[line + Math.max(0, x - radius)];
+                asum -= p >>> 24;
+                rsum -= (p & 0xff0000) >> 16;
+                gsum -= (p & 0x00ff00) >> 8;
+                bsum -= (p & 0x0000ff);
+            }
+        }
+    }
+
+    private static void blurColumns(int[] in, int[] out, int offset, int stride, @Nullable int[] alpha,
+                                    boolean blurAlpha, int w, int h, int radius, int[] dv, int xStart, int xEnd) {
+        int hm = h - 1;
+        int asum, rsum, gsum, bsum, x, y, i, p, yi;
+        for (x = xStart; x < xEnd; x++) {
+            asum = rsum = gsum = bsum = 0;
+            for (i = -radius; i <= radius; i++) {
+                p = in[Math.min(hm, Math.max(i, 0)) * w + x];
+                asum += p >>> 24;
+                rsum += (p & 0xff0000) >> 16;
+                gsum += (p & 0x00ff00) >> 8;
+                bsum += (p & 0x0000ff);
+            }
+            yi = offset + x;
+            for (y = 0; y < h; y++) {
+                // Preserve alpha channel of the source in the last pass, or write the blurred alpha
+                out[yi] = (blurAlpha ? dv[asum] << 24 : alpha == null ? 0xff000000 : 0xff000000 & alpha[yi])
+                        | (dv[rsum] << 16) | (dv[gsum] << 8) | dv[bsum];
+                p = in[Math.min(hm, y + radius + 1) * w + x];
+                asum += p >>> 24;
+                rsum += (p & 0xff0000) >> 16;
+                gsum += (p & 0x00ff00) >> 8;
+                bsum += (p & 0x0000ff);
+                p = in[Math.max(0, y - radius) * w + x];
+                asum -= p >>> 24;
+                rsum -= (p & 0xff0000) >> 16;
+                gsum -= (p & 0x00ff00) >> 8;
+                bsum -= (p & 0x0000ff);
+                yi += stride;
+            }
+        }
+    }
+}
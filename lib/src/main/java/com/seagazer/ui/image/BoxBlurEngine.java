@@ -0,0 +1,48 @@
+package com.seagazer.ui.image;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.NonNull;
+
+/**
+ * 基于{@link BoxBlur}的CPU虚化引擎，耗时与半径无关，按CPU核数并行计算
+ * 透明度通道与{@link StackBlurEngine}和{@link RenderScriptBlurEngine}一样参与虚化，带透明度的图片在预乘透明度的数据上虚化，
+ * ALPHA_8格式的图片使用{@link FastBlur#blurAlpha(byte[], int, int, int, int, int, byte[], BlurWorkspace)}虚化
+ */
+public class BoxBlurEngine implements BlurEngine {
+    public static final String NAME = "box";
+    private final BlurWorkspace mWorkspace = new BlurWorkspace();
+
+    public BoxBlurEngine() {
+        mWorkspace.setParallelism(Runtime.getRuntime().availableProcessors());
+    }
+
+    @NonNull
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public synchronized void blur(@NonNull Bitmap input, @NonNull Bitmap output, float radius) {
+        if (input.getConfig() == Bitmap.Config.ALPHA_8) {
+            FastBlur.blurAlpha(input, output, Math.max(1, Math.round(radius)), mWorkspace);
+            return;
+        }
+        // RGB_565 is converted by getPixels and setPixels only, the kernel always works on packed ARGB
+        int w = input.getWidth();
+        int h = input.getHeight();
+        int[] pix = mWorkspace.obtainPixels(w * h);
+        input.getPixels(pix, 0, w, 0, 0, w, h);
+        // getPixels returns unpremultiplied colors, blurring them lets the transparent pixels darken the edges
+        boolean premultiply = input.hasAlpha();
+        if (premultiply) {
+            FastBlur.premultiply(pix, w * h);
+        }
+        BoxBlur.blurWithAlpha(pix, 0, w, w, h, Math.max(1, Math.round(radius)), pix, mWorkspace);
+        if (premultiply) {
+            FastBlur.unpremultiply(pix, w * h);
+        }
+        output.setPixels(pix, 0, w, 0, 0, w, h);
+    }
+}
@@ -2,6 +2,17 @@ package com.seagazer.ui.image;
 
 import android.graphics.Bitmap;
 
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Copyright (C) 2018 Wasabeef
  *
@@ -18,6 +29,11 @@ import android.graphics.Bitmap;
  * limitations under the License.
  */
 public class FastBlur {
+    /**
+     * 打包通道模糊支持的最大半径，此时每个通道的加权和不超过32位，除法查找表的大小也不超过int
+     */
+    public static final int MAX_PACKED_RADIUS = 2895;
+    private static ExecutorService sExecutor;
 
     public static Bitmap blur(Bitmap sentBitmap, int radius, boolean canReuseInBitmap) {
 
@@ -56,37 +72,416 @@ public class FastBlur {
             bitmap = sentBitmap.copy(sentBitmap.getConfig(), true);
         }
 
+        return blur(bitmap, radius, new BlurWorkspace());
+    }
+
+    /**
+     * 虚化图片的副本，缓存中已有相同图片和半径的结果时直接返回
+     *
+     * @param bitmap 原始图片，不会被修改
+     * @param radius 虚化半径
+     * @param cache  虚化结果缓存
+     * @return 虚化后的图片，由缓存持有，不能修改或回收，半径小于1时返回null
+     */
+    public static Bitmap blur(Bitmap bitmap, int radius, BlurCache cache) {
+        Bitmap blurred = cache.get(bitmap, radius, 1);
+        if (blurred == null) {
+            blurred = blur(bitmap, radius, false);
+            if (blurred != null) {
+                cache.put(bitmap, radius, 1, blurred);
+            }
+        }
+        return blurred;
+    }
+
+    /**
+     * 使用可复用的工作缓冲原地虚化图片，相同尺寸和半径的重复调用不会分配新的内存
+     *
+     * @param bitmap    需要虚化的图片，必须是可修改的，ALPHA_8格式时只虚化透明度通道
+     * @param radius    虚化半径
+     * @param workspace 工作缓冲
+     * @return 虚化后的图片，即传入的bitmap，半径小于1时返回null
+     */
+    public static Bitmap blur(Bitmap bitmap, int radius, BlurWorkspace workspace) {
         if (radius < 1) {
             return (null);
         }
+        if (bitmap.getConfig() == Bitmap.Config.ALPHA_8) {
+            blurAlpha(bitmap, bitmap, radius, workspace);
+            return (bitmap);
+        }
 
         int w = bitmap.getWidth();
         int h = bitmap.getHeight();
 
-        int[] pix = new int[w * h];
+        int[] pix = workspace.obtainPixels(w * h);
         bitmap.getPixels(pix, 0, w, 0, 0, w, h);
 
+        blur(pix, 0, w, w, h, radius, pix, workspace);
+
+        bitmap.setPixels(pix, 0, w, 0, 0, w, h);
+
+        return (bitmap);
+    }
+
+    /**
+     * 原地虚化像素数组，不依赖{@link Bitmap}
+     *
+     * @param argb   按行连续存放的ARGB像素
+     * @param width  图片宽度
+     * @param height 图片高度
+     * @param radius 虚化半径
+     * @return 虚化后的像素，即传入的argb，半径小于1时返回null
+     */
+    public static int[] blur(int[] argb, int width, int height, int radius) {
+        return blur(argb, 0, width, width, height, radius, null, new BlurWorkspace());
+    }
+
+    /**
+     * 虚化像素数组，不依赖{@link Bitmap}
+     *
+     * @param argb      ARGB像素
+     * @param offset    第一个像素在数组中的位置
+     * @param stride    相邻两行像素在数组中的间隔，不能小于width
+     * @param width     图片宽度
+     * @param height    图片高度
+     * @param radius    虚化半径
+     * @param out       输出数组，按照与输入相同的offset和stride写入，为null时原地虚化
+     * @param workspace 工作缓冲，为null时临时创建
+     * @return 虚化后的像素，即out或者argb，半径小于1时返回null
+     */
+    public static int[] blur(int[] argb, int offset, int stride, int width, int height, int radius,
+                             @Nullable int[] out, @Nullable BlurWorkspace workspace) {
+        if (radius < 1) {
+            return (null);
+        }
+        if (stride < width) {
+            throw new IllegalArgumentException("The stride " + stride + " must be at least the width " + width);
+        }
+        if (out == null) {
+            out = argb;
+        }
+        if (workspace == null) {
+            workspace = new BlurWorkspace();
+        }
+        workspace.ensure(width, height, radius);
+        stackBlur(argb, out, offset, stride, width, height, radius, workspace);
+        return out;
+    }
+
+    /**
+     * 保持ARGB打包的虚化，透明度通道也参与虚化
+     * <p>
+     * 每个long按32位间隔同时累加两个通道(红和蓝、透明度和绿)，中间结果也保持打包的ARGB，
+     * 只需要一块中间数组，内存访问量约为{@link #blur(int[], int, int, int, int, int, int[], BlurWorkspace)}的一半，
+     * 红绿蓝通道的结果与其完全一致。
+     *
+     * @param argb      ARGB像素
+     * @param offset    第一个像素在数组中的位置
+     * @param stride    相邻两行像素在数组中的间隔，不能小于width
+     * @param width     图片宽度
+     * @param height    图片高度
+     * @param radius    虚化半径，不能超过{@link #MAX_PACKED_RADIUS}
+     * @param out       输出数组，按照与输入相同的offset和stride写入，为null时原地虚化
+     * @param workspace 工作缓冲，为null时临时创建
+     * @return 虚化后的像素，即out或者argb，半径小于1时返回null
+     */
+    public static int[] blurPacked(int[] argb, int offset, int stride, int width, int height, int radius,
+                                   @Nullable int[] out, @Nullable BlurWorkspace workspace) {
+        if (radius < 1) {
+            return (null);
+        }
+        if (radius > MAX_PACKED_RADIUS) {
+            throw new IllegalArgumentException("The radius " + radius + " must be at most " + MAX_PACKED_RADIUS);
+        }
+        if (stride < width) {
+            throw new IllegalArgumentException("The stride " + stride + " must be at least the width " + width);
+        }
+        if (out == null) {
+            out = argb;
+        }
+        if (workspace == null) {
+            workspace = new BlurWorkspace();
+        }
+        workspace.ensurePacked(width, height, radius);
+        packedStackBlur(argb, out, offset, stride, width, height, radius, workspace);
+        return out;
+    }
+
+    /**
+     * 虚化单通道的透明度数据，用于ALPHA_8格式的阴影和光晕
+     *
+     * @param alpha     透明度数据，每个像素一个字节
+     * @param offset    第一个像素在数组中的位置
+     * @param stride    相邻两行像素在数组中的间隔，不能小于width
+     * @param width     图片宽度
+     * @param height    图片高度
+     * @param radius    虚化半径
+     * @param out       输出数组，按照与输入相同的offset和stride写入，为null时原地虚化
+     * @param workspace 工作缓冲，为null时临时创建
+     * @return 虚化后的数据，即out或者alpha，半径小于1时返回null
+     */
+    public static byte[] blurAlpha(byte[] alpha, int offset, int stride, int width, int height, int radius,
+                                   @Nullable byte[] out, @Nullable BlurWorkspace workspace) {
+        if (radius < 1) {
+            return (null);
+        }
+        if (stride < width) {
+            throw new IllegalArgumentException("The stride " + stride + " must be at least the width " + width);
+        }
+        if (out == null) {
+            out = alpha;
+        }
+        if (workspace == null) {
+            workspace = new BlurWorkspace();
+        }
+        workspace.ensureAlpha(width, height, radius);
+        alphaStackBlur(alpha, out, offset, stride, width, height, radius, workspace);
+        return out;
+    }
+
+    /**
+     * 虚化ALPHA_8格式的图片，像素直接按字节读写，不经过ARGB转换
+     *
+     * @param input     原始图片
+     * @param output    输出图片，尺寸和格式必须与原始图片一致，可以与原始图片相同
+     * @param radius    虚化半径
+     * @param workspace 工作缓冲
+     */
+    static void blurAlpha(Bitmap input, Bitmap output, int radius, BlurWorkspace workspace) {
+        int stride = input.getRowBytes();
+        byte[] bytes = workspace.obtainAlphaPixels(stride * input.getHeight());
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, stride * input.getHeight());
+        input.copyPixelsToBuffer(buffer);
+        blurAlpha(bytes, 0, stride, input.getWidth(), input.getHeight(), radius, null, workspace);
+        buffer.rewind();
+        output.copyPixelsFromBuffer(buffer);
+    }
+
+    private static void stackBlur(final int[] src, final int[] out, final int offset, final int stride,
+                                  final int w, final int h, final int radius, final BlurWorkspace workspace) {
         int wm = w - 1;
         int hm = h - 1;
-        int wh = w * h;
-        int div = radius + radius + 1;
+        int r1 = radius + 1;
+        // the clamped indices are shared by all rows and columns, so fill them before any pass
+        int[] vminX = workspace.vminX;
+        for (int x = 0; x < w; x++) {
+            vminX[x] = Math.min(x + r1, wm);
+        }
+        int[] vminY = workspace.vminY;
+        for (int y = 0; y < h; y++) {
+            vminY[y] = Math.min(y + r1, hm) * w;
+        }
 
-        int r[] = new int[wh];
-        int g[] = new int[wh];
-        int b[] = new int[wh];
-        int rsum, gsum, bsum, x, y, i, p, yp, yi, yw;
-        int vmin[] = new int[Math.max(w, h)];
+        int bands = Math.min(workspace.getParallelism(), Math.min(w, h));
+        if (bands <= 1) {
+            blurRows(src, offset, stride, w, radius, workspace.stacks[0], workspace, 0, h);
+            blurColumns(src, out, offset, stride, w, h, radius, workspace.stacks[0], workspace, 0, w);
+            return;
+        }
+        // every row is independent in the horizontal pass and every column in the vertical pass,
+        // the latch between the two passes is the only barrier needed
+        runBands(bands, h, new BandRunner() {
+            @Override
+            public void run(int band, int start, int end) {
+                blurRows(src, offset, stride, w, radius, workspace.stacks[band], workspace, start, end);
+            }
+        });
+        runBands(bands, w, new BandRunner() {
+            @Override
+            public void run(int band, int start, int end) {
+                blurColumns(src, out, offset, stride, w, h, radius, workspace.stacks[band], workspace, start, end);
+            }
+        });
+    }
 
-        int divsum = (div + 1) >> 1;
-        divsum *= divsum;
-        int dv[] = new int[256 * divsum];
-        for (i = 0; i < 256 * divsum; i++) {
-            dv[i] = (i / divsum);
+    private static void packedStackBlur(final int[] src, final int[] out, final int offset, final int stride,
+                                        final int w, final int h, final int radius, final BlurWorkspace workspace) {
+        int wm = w - 1;
+        int hm = h - 1;
+        int r1 = radius + 1;
+        int[] vminX = workspace.vminX;
+        for (int x = 0; x < w; x++) {
+            vminX[x] = Math.min(x + r1, wm);
+        }
+        int[] vminY = workspace.vminY;
+        for (int y = 0; y < h; y++) {
+            vminY[y] = Math.min(y + r1, hm) * w;
         }
 
-        yw = yi = 0;
+        int bands = Math.min(workspace.getParallelism(), Math.min(w, h));
+        if (bands <= 1) {
+            blurPackedRows(src, offset, stride, w, radius, workspace.packedStacks[0], workspace, 0, h);
+            blurPackedColumns(out, offset, stride, w, h, radius, workspace.packedStacks[0], workspace, 0, w);
+            return;
+        }
+        runBands(bands, h, new BandRunner() {
+            @Override
+            public void run(int band, int start, int end) {
+                blurPackedRows(src, offset, stride, w, radius, workspace.packedStacks[band], workspace, start, end);
+            }
+        });
+        runBands(bands, w, new BandRunner() {
+            @Override
+            public void run(int band, int start, int end) {
+                blurPackedColumns(out, offset, stride, w, h, radius, workspace.packedStacks[band], workspace, start, end);
+            }
+        });
+    }
+
+    private static void alphaStackBlur(final byte[] src, final byte[] out, final int offset, final int stride,
+                                       final int w, final int h, final int radius, final BlurWorkspace workspace) {
+        int wm = w - 1;
+        int hm = h - 1;
+        int r1 = radius + 1;
+        int[] vminX = workspace.vminX;
+        for (int x = 0; x < w; x++) {
+            vminX[x] = Math.min(x + r1, wm);
+        }
+        int[] vminY = workspace.vminY;
+        for (int y = 0; y < h; y++) {
+            vminY[y] = Math.min(y + r1, hm) * w;
+        }
+
+        int bands = Math.min(workspace.getParallelism(), Math.min(w, h));
+        if (bands <= 1) {
+            blurAlphaRows(src, offset, stride, w, radius, workspace.alphaStacks[0], workspace, 0, h);
+            blurAlphaColumns(out, offset, stride, w, h, radius, workspace.alphaStacks[0], workspace, 0, w);
+            return;
+        }
+        runBands(bands, h, new BandRunner() {
+            @Override
+            public void run(int band, int start, int end) {
+                blurAlphaRows(src, offset, stride, w, radius, workspace.alphaStacks[band], workspace, start, end);
+            }
+        });
+        runBands(bands, w, new BandRunner() {
+            @Override
+            public void run(int band, int start, int end) {
+                blurAlphaColumns(out, offset, stride, w, h, radius, workspace.alphaStacks[band], workspace, start, end);
+            }
+        });
+    }
+
+    /**
+     * 把{@link Bitmap#getPixels(int[], int, int, int, int, int, int)}得到的非预乘颜色转换为预乘透明度的颜色，
+     * 虚化带透明度的像素前调用，透明像素的颜色不会渗入相邻像素
+     *
+     * @param pix    ARGB像素
+     * @param length 像素个数
+     */
+    static void premultiply(int[] pix, int length) {
+        for (int i = 0; i < length; i++) {
+            int color = pix[i];
+            int a = color >>> 24;
+            if (a == 255) {
+                continue;
+            }
+            int r = ((color >> 16 & 0xff) * a + 127) / 255;
+            int g = ((color >> 8 & 0xff) * a + 127) / 255;
+            int b = ((color & 0xff) * a + 127) / 255;
+            pix[i] = a << 24 | r << 16 | g << 8 | b;
+        }
+    }
+
+    /**
+     * 把预乘透明度的颜色还原为{@link Bitmap#setPixels(int[], int, int, int, int, int, int)}需要的非预乘颜色
+     *
+     * @param pix    ARGB像素
+     * @param length 像素个数
+     */
+    static void unpremultiply(int[] pix, int length) {
+        for (int i = 0; i < length; i++) {
+            int color = pix[i];
+            int a = color >>> 24;
+            if (a == 255) {
+                continue;
+            }
+            if (a == 0) {
+                pix[i] = 0;
+                continue;
+            }
+            int half = a / 2;
+            int r = Math.min(255, ((color >> 16 & 0xff) * 255 + half) / a);
+            int g = Math.min(255, ((color >> 8 & 0xff) * 255 + half) / a);
+            int b = Math.min(255, ((color & 0xff) * 255 + half) / a);
+            pix[i] = a << 24 | r << 16 | g << 8 | b;
+        }
+    }
+
+    static void runBands(int bands, int length, final BandRunner runner) {
+        final CountDownLatch latch = new CountDownLatch(bands - 1);
+        int step = (length + bands - 1) / bands;
+        for (int band = 1; band < bands; band++) {
+            final int index = band;
+            final int start = Math.min(length, band * step);
+            final int end = Math.min(length, start + step);
+            getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        runner.run(index, start, end);
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            });
+        }
+        // the calling thread takes the first band itself
+        runner.run(0, 0, Math.min(length, step));
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            int cores = Runtime.getRuntime().availableProcessors();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(cores, cores, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "FastBlur #" + mCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+            sExecutor = executor;
+        }
+        return sExecutor;
+    }
+
+    interface BandRunner {
+        void run(int band, int start, int end);
+    }
+
+    private static void blurRows(int[] pix, int offset, int stride, int w, int radius, int[][] stack,
+                                 BlurWorkspace workspace, int yStart, int yEnd) {
+        int wm = w - 1;
+        int div = radius + radius + 1;
+
+        int r[] = workspace.r;
+        int g[] = workspace.g;
+        int b[] = workspace.b;
+        int rsum, gsum, bsum, x, y, i, p, yi, yw;
+        int vmin[] = workspace.vminX;
+        int dv[] = workspace.dv;
+
+        yi = yStart * w;
+        yw = offset + yStart * stride;
 
-        int[][] stack = new int[div][3];
         int stackpointer;
         int stackstart;
         int[] sir;
@@ -95,10 +490,10 @@ public class FastBlur {
         int routsum, goutsum, boutsum;
         int rinsum, ginsum, binsum;
 
-        for (y = 0; y < h; y++) {
+        for (y = yStart; y < yEnd; y++) {
             rinsum = ginsum = binsum = routsum = goutsum = boutsum = rsum = gsum = bsum = 0;
             for (i = -radius; i <= radius; i++) {
-                p = pix[yi + Math.min(wm, Math.max(i, 0))];
+                p = pix[yw + Math.min(wm, Math.max(i, 0))];
                 sir = stack[i + radius];
                 sir[0] = (p & 0xff0000) >> 16;
                 sir[1] = (p & 0x00ff00) >> 8;
@@ -136,9 +531,6 @@ public class FastBlur {
                 goutsum -= sir[1];
                 boutsum -= sir[2];
 
-                if (y == 0) {
-                    vmin[x] = Math.min(x + radius + 1, wm);
-                }
                 p = pix[yw + vmin[x]];
 
                 sir[0] = (p & 0xff0000) >> 16;
@@ -166,9 +558,31 @@ public class FastBlur {
 
                 yi++;
             }
-            yw += w;
+            yw += stride;
         }
-        for (x = 0; x < w; x++) {
+    }
+
+    private static void blurColumns(int[] pix, int[] out, int offset, int stride, int w, int h, int radius,
+                                    int[][] stack, BlurWorkspace workspace, int xStart, int xEnd) {
+        int hm = h - 1;
+        int div = radius + radius + 1;
+
+        int r[] = workspace.r;
+        int g[] = workspace.g;
+        int b[] = workspace.b;
+        int rsum, gsum, bsum, x, y, i, p, yp, yi;
+        int vmin[] = workspace.vminY;
+        int dv[] = workspace.dv;
+
+        int stackpointer;
+        int stackstart;
+        int[] sir;
+        int rbs;
+        int r1 = radius + 1;
+        int routsum, goutsum, boutsum;
+        int rinsum, ginsum, binsum;
+
+        for (x = xStart; x < xEnd; x++) {
             rinsum = ginsum = binsum = routsum = goutsum = boutsum = rsum = gsum = bsum = 0;
             yp = -radius * w;
             for (i = -radius; i <= radius; i++) {
@@ -200,11 +614,11 @@ public class FastBlur {
                     yp += w;
                 }
             }
-            yi = x;
+            yi = offset + x;
             stackpointer = radius;
             for (y = 0; y < h; y++) {
                 // Preserve alpha channel: ( 0xff000000 & pix[yi] )
-                pix[yi] = (0xff000000 & pix[yi]) | (dv[rsum] << 16) | (dv[gsum] << 8) | dv[bsum];
+                out[yi] = (0xff000000 & pix[yi]) | (dv[rsum] << 16) | (dv[gsum] << 8) | dv[bsum];
 
                 rsum -= routsum;
                 gsum -= goutsum;
@@ -217,9 +631,6 @@ public class FastBlur {
                 goutsum -= sir[1];
                 boutsum -= sir[2];
 
-                if (x == 0) {
-                    vmin[y] = Math.min(y + r1, hm) * w;
-                }
                 p = x + vmin[y];
 
                 sir[0] = r[p];
@@ -245,12 +656,284 @@ public class FastBlur {
                 ginsum -= sir[1];
                 binsum -= sir[2];
 
-                yi += w;
+                yi += stride;
             }
         }
+    }
 
-        bitmap.setPixels(pix, 0, w, 0, 0, w, h);
+    // Two channels share one long lane with 32 bits each: red and blue in rb, alpha and green in ag.
+    // Every sum of a lane stays below 255 * (radius + 1)^2, so the lanes never carry into each other,
+    // and all the subtractions remove values that were added before, so they never borrow either.
 
-        return (bitmap);
+    private static void blurPackedRows(int[] pix, int offset, int stride, int w, int radius, long[] stack,
+                                       BlurWorkspace workspace, int yStart, int yEnd) {
+        int wm = w - 1;
+        int div = radius + radius + 1;
+
+        int[] packed = workspace.r;
+        int x, y, i, p, yi, yw, sp;
+        int vmin[] = workspace.vminX;
+        int dv[] = workspace.dv;
+
+        yi = yStart * w;
+        yw = offset + yStart * stride;
+
+        int stackpointer;
+        int rbs;
+        int r1 = radius + 1;
+        long rb, ag;
+        long rbsum, agsum, rboutsum, agoutsum, rbinsum, aginsum;
+
+        for (y = yStart; y < yEnd; y++) {
+            rbsum = agsum = rboutsum = agoutsum = rbinsum = aginsum = 0;
+            for (i = -radius; i <= radius; i++) {
+                p = pix[yw + Math.min(wm, Math.max(i, 0))];
+                rb = ((long) (p & 0xff0000) << 16) | (p & 0x0000ff);
+                ag = ((long) (p >>> 24) << 32) | ((p & 0x00ff00) >> 8);
+                sp = (i + radius) << 1;
+                stack[sp] = rb;
+                stack[sp + 1] = ag;
+                rbs = r1 - Math.abs(i);
+                rbsum += rb * rbs;
+                agsum += ag * rbs;
+                if (i > 0) {
+                    rbinsum += rb;
+                    aginsum += ag;
+                } else {
+                    rboutsum += rb;
+                    agoutsum += ag;
+                }
+            }
+            stackpointer = radius;
+
+            for (x = 0; x < w; x++) {
+                packed[yi] = (dv[(int) (agsum >>> 32)] << 24) | (dv[(int) (rbsum >>> 32)] << 16)
+                        | (dv[(int) (agsum & 0xffffffffL)] << 8) | dv[(int) (rbsum & 0xffffffffL)];
+
+                rbsum -= rboutsum;
+                agsum -= agoutsum;
+
+                sp = ((stackpointer - radius + div) % div) << 1;
+                rboutsum -= stack[sp];
+                agoutsum -= stack[sp + 1];
+
+                p = pix[yw + vmin[x]];
+                rb = ((long) (p & 0xff0000) << 16) | (p & 0x0000ff);
+                ag = ((long) (p >>> 24) << 32) | ((p & 0x00ff00) >> 8);
+                stack[sp] = rb;
+                stack[sp + 1] = ag;
+
+                rbinsum += rb;
+                aginsum += ag;
+
+                rbsum += rbinsum;
+                agsum += aginsum;
+
+                stackpointer = (stackpointer + 1) % div;
+                sp = stackpointer << 1;
+
+                rboutsum += stack[sp];
+                agoutsum += stack[sp + 1];
+
+                rbinsum -= stack[sp];
+                aginsum -= stack[sp + 1];
+
+                yi++;
+            }
+            yw += stride;
+        }
+    }
+
+    private static void blurPackedColumns(int[] out, int offset, int stride, int w, int h, int radius,
+                                          long[] stack, BlurWorkspace workspace, int xStart, int xEnd) {
+        int hm = h - 1;
+        int div = radius + radius + 1;
+
+        int[] packed = workspace.r;
+        int x, y, i, p, yp, yi, sp;
+        int vmin[] = workspace.vminY;
+        int dv[] = workspace.dv;
+
+        int stackpointer;
+        int rbs;
+        int r1 = radius + 1;
+        long rb, ag;
+        long rbsum, agsum, rboutsum, agoutsum, rbinsum, aginsum;
+
+        for (x = xStart; x < xEnd; x++) {
+            rbsum = agsum = rboutsum = agoutsum = rbinsum = aginsum = 0;
+            yp = -radius * w;
+            for (i = -radius; i <= radius; i++) {
+                p = packed[Math.max(0, yp) + x];
+                rb = ((long) (p & 0xff0000) << 16) | (p & 0x0000ff);
+                ag = ((long) (p >>> 24) << 32) | ((p & 0x00ff00) >> 8);
+                sp = (i + radius) << 1;
+                stack[sp] = rb;
+                stack[sp + 1] = ag;
+                rbs = r1 - Math.abs(i);
+                rbsum += rb * rbs;
+                agsum += ag * rbs;
+                if (i > 0) {
+                    rbinsum += rb;
+                    aginsum += ag;
+                } else {
+                    rboutsum += rb;
+                    agoutsum += ag;
+                }
+                if (i < hm) {
+                    yp += w;
+                }
+            }
+            yi = offset + x;
+            stackpointer = radius;
+            for (y = 0; y < h; y++) {
+                out[yi] = (dv[(int) (agsum >>> 32)] << 24) | (dv[(int) (rbsum >>> 32)] << 16)
+                        | (dv[(int) (agsum & 0xffffffffL)] << 8) | dv[(int) (rbsum & 0xffffffffL)];
+
+                rbsum -= rboutsum;
+                agsum -= agoutsum;
+
+                sp = ((stackpointer - radius + div) % div) << 1;
+                rboutsum -= stack[sp];
+                agoutsum -= stack[sp + 1];
+
+                p = packed[x + vmin[y]];
+                rb = ((long) (p & 0xff0000) << 16) | (p & 0x0000ff);
+                ag = ((long) (p >>> 24) << 32) | ((p & 0x00ff00) >> 8);
+                stack[sp] = rb;
+                stack[sp + 1] = ag;
+
+                rbinsum += rb;
+                aginsum += ag;
+
+                rbsum += rbinsum;
+                agsum += aginsum;
+
+                stackpointer = (stackpointer + 1) % div;
+                sp = stackpointer << 1;
+
+                rboutsum += stack[sp];
+                agoutsum += stack[sp + 1];
+
+                rbinsum -= stack[sp];
+                aginsum -= stack[sp + 1];
+
+                yi += stride;
+            }
+        }
+    }
+
+    private static void blurAlphaRows(byte[] pix, int offset, int stride, int w, int radius, int[] stack,
+                                      BlurWorkspace workspace, int yStart, int yEnd) {
+        int wm = w - 1;
+        int div = radius + radius + 1;
+
+        byte[] alpha = workspace.alpha;
+        int asum, x, y, i, p, yi, yw, sp;
+        int vmin[] = workspace.vminX;
+        int dv[] = workspace.dv;
+
+        yi = yStart * w;
+        yw = offset + yStart * stride;
+
+        int stackpointer;
+        int r1 = radius + 1;
+        int aoutsum, ainsum;
+
+        for (y = yStart; y < yEnd; y++) {
+            ainsum = aoutsum = asum = 0;
+            for (i = -radius; i <= radius; i++) {
+                p = pix[yw + Math.min(wm, Math.max(i, 0))] & 0xff;
+                stack[i + radius] = p;
+                asum += p * (r1 - Math.abs(i));
+                if (i > 0) {
+                    ainsum += p;
+                } else {
+                    aoutsum += p;
+                }
+            }
+            stackpointer = radius;
+
+            for (x = 0; x < w; x++) {
+                alpha[yi] = (byte) dv[asum];
+
+                asum -= aoutsum;
+
+                sp = (stackpointer - radius + div) % div;
+                aoutsum -= stack[sp];
+
+                p = pix[yw + vmin[x]] & 0xff;
+                stack[sp] = p;
+
+                ainsum += p;
+                asum += ainsum;
+
+                stackpointer = (stackpointer + 1) % div;
+                p = stack[stackpointer];
+
+                aoutsum += p;
+                ainsum -= p;
+
+                yi++;
+            }
+            yw += stride;
+        }
+    }
+
+    private static void blurAlphaColumns(byte[] out, int offset, int stride, int w, int h, int radius,
+                                         int[] stack, BlurWorkspace workspace, int xStart, int xEnd) {
+        int hm = h - 1;
+        int div = radius + radius + 1;
+
+        byte[] alpha = workspace.alpha;
+        int asum, x, y, i, p, yp, yi, sp;
+        int vmin[] = workspace.vminY;
+        int dv[] = workspace.dv;
+
+        int stackpointer;
+        int r1 = radius + 1;
+        int aoutsum, ainsum;
+
+        for (x = xStart; x < xEnd; x++) {
+            ainsum = aoutsum = asum = 0;
+            yp = -radius * w;
+            for (i = -radius; i <= radius; i++) {
+                p = alpha[Math.max(0, yp) + x] & 0xff;
+                stack[i + radius] = p;
+                asum += p * (r1 - Math.abs(i));
+                if (i > 0) {
+                    ainsum += p;
+                } else {
+                    aoutsum += p;
+                }
+                if (i < hm) {
+                    yp += w;
+                }
+            }
+            yi = offset + x;
+            stackpointer = radius;
+            for (y = 0; y < h; y++) {
+                out[yi] = (byte) dv[asum];
+
+                asum -= aoutsum;
+
+                sp = (stackpointer - radius + div) % div;
+                aoutsum -= stack[sp];
+
+                p = alpha[x + vmin[y]] & 0xff;
+                stack[sp] = p;
+
+                ainsum += p;
+                asum += ainsum;
+
+                stackpointer = (stackpointer + 1) % div;
+                p = stack[stackpointer];
+
+                aoutsum += p;
+                ainsum -= p;
+
+                yi += stride;
+            }
+        }
     }
 }
@@ -2,10 +2,6 @@ package com.seagazer.ui.image;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.renderscript.Allocation;
-import android.renderscript.Element;
-import android.renderscript.RenderScript;
-import android.renderscript.ScriptIntrinsicBlur;
 
 import androidx.annotation.IntRange;
 
@@ -18,34 +14,36 @@ public class RenderScriptBlur {
      * 虚化图片
      *
      * @param context 上下文
-     * @param bitmap  原始图片
+     * @param bitmap  原始图片，RGB_565和ALPHA_8格式的图片输出相同格式的结果
      * @param radius  虚化力度(0, 25]
      * @return 虚化后的图片
      */
     public static Bitmap blur(Context context, Bitmap bitmap, @IntRange(from = 0, to = 25) int radius) {
         //Let's create an empty bitmap with the same size of the bitmap we want to fastBlur
-        int width = bitmap.getWidth();
-        int height = bitmap.getWidth() / 16 * 9;
-        Bitmap outBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-        //Instantiate a new Renderscript
-        RenderScript rs = RenderScript.create(context.getApplicationContext());
-        //Create an Intrinsic Blur Script using the Renderscript
-        ScriptIntrinsicBlur blurScript = ScriptIntrinsicBlur.create(rs, Element.U8_4(rs));
-        //Create the Allocations (in/out) with the Renderscript and the in/out bitmaps
-        Allocation allIn = Allocation.createFromBitmap(rs, bitmap);
-        Allocation allOut = Allocation.createFromBitmap(rs, outBitmap);
-        //Set the radius of the fastBlur: 0 < radius <= 25
-        blurScript.setRadius(radius);
-        //Perform the Renderscript
-        blurScript.setInput(allIn);
-        blurScript.forEach(allOut);
-        //Copy the final bitmap created by the out Allocation to the outBitmap
-        allOut.copyTo(outBitmap);
-        //recycle the original bitmap
-        //bitmap.recycle();
-        //After finishing everything, we destroy the Renderscript.
-        rs.destroy();
+        Bitmap.Config config = bitmap.getConfig() == Bitmap.Config.RGB_565 || bitmap.getConfig() == Bitmap.Config.ALPHA_8
+                ? bitmap.getConfig() : Bitmap.Config.ARGB_8888;
+        Bitmap outBitmap = Bitmap.createBitmap(bitmap.getWidth(), bitmap.getHeight(), config);
+        //The shared engine keeps the Renderscript, the blur script and the allocations alive between calls
+        SharedRenderScript.get(context).blur(bitmap, outBitmap, radius);
         return outBitmap;
 
     }
+
+    /**
+     * 虚化图片，缓存中已有相同图片和半径的结果时直接返回
+     *
+     * @param context 上下文
+     * @param bitmap  原始图片
+     * @param radius  虚化力度(0, 25]
+     * @param cache   虚化结果缓存
+     * @return 虚化后的图片，由缓存持有，不能修改或回收
+     */
+    public static Bitmap blur(Context context, Bitmap bitmap, @IntRange(from = 0, to = 25) int radius, BlurCache cache) {
+        Bitmap outBitmap = cache.get(bitmap, radius, 1);
+        if (outBitmap == null) {
+            outBitmap = blur(context, bitmap, radius);
+            cache.put(bitmap, radius, 1, outBitmap);
+        }
+        return outBitmap;
+    }
 }
@@ -0,0 +1,29 @@
+package com.seagazer.ui.image;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import androidx.annotation.NonNull;
+
+/**
+ * 基于{@link SharedRenderScript}的虚化引擎
+ */
+public class RenderScriptBlurEngine implements BlurEngine {
+    public static final String NAME = "renderscript";
+    private final SharedRenderScript mRenderScript;
+
+    public RenderScriptBlurEngine(Context context) {
+        mRenderScript = SharedRenderScript.get(context);
+    }
+
+    @NonNull
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void blur(@NonNull Bitmap input, @NonNull Bitmap output, float radius) {
+        mRenderScript.blur(input, output, radius);
+    }
+}
@@ -0,0 +1,276 @@
+package com.seagazer.ui.image;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Handler;
+import android.os.Looper;
+import android.renderscript.Allocation;
+import android.renderscript.Element;
+import android.renderscript.RenderScript;
+import android.renderscript.ScriptIntrinsicBlur;
+
+import androidx.annotation.NonNull;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * 进程内共享的RenderScript虚化引擎
+ * <p>
+ * 缓存RenderScript上下文和{@link ScriptIntrinsicBlur}，并按宽、高、像素格式复用{@link Allocation}，
+ * 避免每次虚化都重新创建。使用者通过{@link #acquire()}和{@link #release()}声明引用，
+ * 引用计数归零且空闲超过{@link #IDLE_TIMEOUT}后自动销毁，系统内存紧张时也会立即销毁，
+ * 销毁后下次使用时重新创建。
+ */
+public class SharedRenderScript implements ComponentCallbacks2 {
+    private static final long IDLE_TIMEOUT = 30 * 1000;
+    private static final int MAX_POOL_SIZE = 4;
+    private static SharedRenderScript sInstance;
+    private final Context mContext;
+    private final Handler mHandler;
+    private final LinkedList<PooledAllocation> mPool = new LinkedList<>();
+    private RenderScript mRenderScript;
+    private ScriptIntrinsicBlur mBlurScript;
+    private ScriptIntrinsicBlur mAlphaBlurScript;
+    private int mRefCount;
+    private final Runnable mIdleRelease = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (SharedRenderScript.this) {
+                if (mRefCount == 0) {
+                    destroy();
+                }
+            }
+        }
+    };
+
+    private SharedRenderScript(Context context) {
+        mContext = context.getApplicationContext();
+        mHandler = new Handler(Looper.getMainLooper());
+        mContext.registerComponentCallbacks(this);
+    }
+
+    /**
+     * 获取进程内唯一的实例
+     *
+     * @param context 上下文
+     * @return 共享的虚化引擎
+     */
+    public static synchronized SharedRenderScript get(Context context) {
+        if (sInstance == null) {
+            sInstance = new SharedRenderScript(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * 增加一次引用，持有引用期间不会因为空闲而销毁
+     */
+    public synchronized void acquire() {
+        mRefCount++;
+        mHandler.removeCallbacks(mIdleRelease);
+    }
+
+    /**
+     * 释放一次引用，引用计数归零后空闲一段时间自动销毁
+     */
+    public synchronized void release() {
+        if (mRefCount > 0) {
+            mRefCount--;
+        }
+        if (mRefCount == 0) {
+            mHandler.removeCallbacks(mIdleRelease);
+            mHandler.postDelayed(mIdleRelease, IDLE_TIMEOUT);
+        }
+    }
+
+    /**
+     * 虚化图片
+     * ALPHA_8格式使用单通道的虚化脚本；RenderScript不支持RGB_565格式，会先转换为ARGB_8888，虚化后再转换回来
+     *
+     * @param input  原始图片，支持ARGB_8888、RGB_565和ALPHA_8格式
+     * @param output 输出图片，尺寸和格式必须与原始图片一致，可以与原始图片相同
+     * @param radius 虚化力度(0, 25]
+     */
+    public void blur(@NonNull Bitmap input, @NonNull Bitmap output, float radius) {
+        if (input.getConfig() == Bitmap.Config.RGB_565) {
+            Bitmap argb = input.copy(Bitmap.Config.ARGB_8888, true);
+            blur(argb, argb, radius);
+            new Canvas(output).drawBitmap(argb, 0, 0, null);
+            argb.recycle();
+            return;
+        }
+        acquire();
+        try {
+            synchronized (this) {
+                ScriptIntrinsicBlur blurScript = input.getConfig() == Bitmap.Config.ALPHA_8
+                        ? getAlphaBlurScript() : getBlurScript();
+                Allocation allIn = obtainAllocation(input);
+                // the script overwrites the whole output, only its pixels after the script are needed
+                Allocation allOut = obtainOutputAllocation(output, allIn);
+                blurScript.setRadius(radius);
+                blurScript.setInput(allIn);
+                blurScript.forEach(allOut);
+                allOut.copyTo(output);
+                recycleAllocation(allIn, input);
+                recycleAllocation(allOut, output);
+            }
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * 获取共享的RenderScript上下文，需要在同步块内使用
+     *
+     * @return RenderScript上下文
+     */
+    synchronized RenderScript getRenderScript() {
+        if (mRenderScript == null) {
+            mRenderScript = RenderScript.create(mContext);
+        }
+        return mRenderScript;
+    }
+
+    /**
+     * 获取缓存的虚化脚本，需要在同步块内使用
+     *
+     * @return 虚化脚本
+     */
+    synchronized ScriptIntrinsicBlur getBlurScript() {
+        if (mBlurScript == null) {
+            RenderScript rs = getRenderScript();
+            mBlurScript = ScriptIntrinsicBlur.create(rs, Element.U8_4(rs));
+        }
+        return mBlurScript;
+    }
+
+    /**
+     * 获取缓存的单通道虚化脚本，需要在同步块内使用
+     *
+     * @return 透明度通道的虚化脚本
+     */
+    synchronized ScriptIntrinsicBlur getAlphaBlurScript() {
+        if (mAlphaBlurScript == null) {
+            RenderScript rs = getRenderScript();
+            mAlphaBlurScript = ScriptIntrinsicBlur.create(rs, Element.U8(rs));
+        }
+        return mAlphaBlurScript;
+    }
+
+    /**
+     * 从缓存池中取出一个与图片尺寸格式一致的Allocation，并拷贝图片内容，没有可用的则新建
+     *
+     * @param bitmap 图片
+     * @return 包含图片内容的Allocation
+     */
+    synchronized Allocation obtainAllocation(Bitmap bitmap) {
+        Iterator<PooledAllocation> iterator = mPool.iterator();
+        while (iterator.hasNext()) {
+            PooledAllocation pooled = iterator.next();
+            if (pooled.matches(bitmap)) {
+                iterator.remove();
+                pooled.allocation.copyFrom(bitmap);
+                return pooled.allocation;
+            }
+        }
+        return Allocation.createFromBitmap(getRenderScript(), bitmap, Allocation.MipmapControl.MIPMAP_NONE,
+                Allocation.USAGE_SCRIPT);
+    }
+
+    /**
+     * 从缓存池中取出一个与图片尺寸格式一致的Allocation作为输出，不拷贝图片内容，没有可用的则按输入的类型新建
+     *
+     * @param bitmap 输出图片
+     * @param input  与输出图片尺寸格式一致的输入Allocation
+     * @return 内容未定义的Allocation
+     */
+    synchronized Allocation obtainOutputAllocation(Bitmap bitmap, Allocation input) {
+        Iterator<PooledAllocation> iterator = mPool.iterator();
+        while (iterator.hasNext()) {
+            PooledAllocation pooled = iterator.next();
+            if (pooled.matches(bitmap)) {
+                iterator.remove();
+                return pooled.allocation;
+            }
+        }
+        return Allocation.createTyped(getRenderScript(), input.getType(), Allocation.USAGE_SCRIPT);
+    }
+
+    /**
+     * 将Allocation放回缓存池，超出容量时销毁最早放入的
+     *
+     * @param allocation 使用完毕的Allocation
+     * @param bitmap     与Allocation尺寸格式一致的图片
+     */
+    synchronized void recycleAllocation(Allocation allocation, Bitmap bitmap) {
+        if (mRenderScript == null) {
+            allocation.destroy();
+            return;
+        }
+        mPool.addFirst(new PooledAllocation(allocation, bitmap));
+        while (mPool.size() > MAX_POOL_SIZE) {
+            mPool.removeLast().allocation.destroy();
+        }
+    }
+
+    private synchronized void destroy() {
+        for (PooledAllocation pooled : mPool) {
+            pooled.allocation.destroy();
+        }
+        mPool.clear();
+        if (mBlurScript != null) {
+            mBlurScript.destroy();
+            mBlurScript = null;
+        }
+        if (mAlphaBlurScript != null) {
+            mAlphaBlurScript.destroy();
+            mAlphaBlurScript = null;
+        }
+        if (mRenderScript != null) {
+            mRenderScript.destroy();
+            mRenderScript = null;
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            synchronized (this) {
+                destroy();
+            }
+        }
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+    }
+
+    @Override
+    public void onLowMemory() {
+        synchronized (this) {
+            destroy();
+        }
+    }
+
+    private static final class PooledAllocation {
+        final Allocation allocation;
+        final int width;
+        final int height;
+        final Bitmap.Config config;
+
+        PooledAllocation(Allocation allocation, Bitmap bitmap) {
+            this.allocation = allocation;
+            this.width = bitmap.getWidth();
+            this.height = bitmap.getHeight();
+            this.config = bitmap.getConfig();
+        }
+
+        boolean matches(Bitmap bitmap) {
+            return width == bitmap.getWidth() && height == bitmap.getHeight() && config == bitmap.getConfig();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.seagazer.ui.image;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * 按条带流式虚化大图
+ * <p>
+ * {@link FastBlur}需要一次读入整张图片的像素，并额外分配三个同样大小的通道数组，每个像素约16字节，
+ * 4K图片在小内存设备上无法虚化。这里把图片按行分成条带，每次只读入一个条带及其上下各一个虚化半径的重叠行，
+ * 虚化后只输出条带本身，峰值内存只与条带大小有关，与图片大小无关。
+ * 重叠行保证了条带边界两侧的像素与整图虚化的结果完全一致。
+ */
+public class StripeBlur {
+    /**
+     * 默认每个条带输出的行数
+     */
+    public static final int DEFAULT_STRIPE_ROWS = 128;
+
+    /**
+     * 原图像素的来源
+     */
+    public interface PixelSource {
+        /**
+         * 读取原图中连续若干行的ARGB像素
+         *
+         * @param y      第一行在原图中的位置
+         * @param rows   行数
+         * @param pixels 输出数组，从0开始按行写入
+         * @param stride 相邻两行像素在数组中的间隔，即原图宽度
+         */
+        void read(int y, int rows, @NonNull int[] pixels, int stride);
+    }
+
+    /**
+     * 虚化结果的输出
+     */
+    public interface PixelSink {
+        /**
+         * 输出虚化后连续若干行的ARGB像素，数组在返回后会被复用
+         *
+         * @param y      第一行在原图中的位置
+         * @param rows   行数
+         * @param pixels 虚化后的像素
+         * @param offset 第一个像素在数组中的位置
+         * @param stride 相邻两行像素在数组中的间隔，即原图宽度
+         */
+        void write(int y, int rows, @NonNull int[] pixels, int offset, int stride);
+    }
+
+    /**
+     * 按条带虚化图片
+     *
+     * @param width      图片宽度
+     * @param height     图片高度
+     * @param radius     虚化半径
+     * @param stripeRows 每个条带输出的行数，越小占用内存越少，但重叠行的重复读取和计算越多
+     * @param source     原图像素的来源
+     * @param sink       虚化结果的输出，按从上到下的顺序调用
+     * @param workspace  工作缓冲，为null时临时创建
+     */
+    public static void blur(int width, int height, int radius, int stripeRows, @NonNull PixelSource source,
+                            @NonNull PixelSink sink, @Nullable BlurWorkspace workspace) {
+        if (stripeRows < 1) {
+            throw new IllegalArgumentException("The stripe rows " + stripeRows + " must be at least 1");
+        }
+        if (workspace == null) {
+            workspace = new BlurWorkspace();
+        }
+        int overlap = Math.max(0, radius);
+        int[] pixels = workspace.obtainPixels(width * Math.min(height, stripeRows + 2 * overlap));
+        for (int y = 0; y < height; y += stripeRows) {
+            int rows = Math.min(stripeRows, height - y);
+            // read the rows within one radius around the stripe, so the column pass sees the same pixels as a whole image blur
+            int start = Math.max(0, y - overlap);
+            int end = Math.min(height, y + rows + overlap);
+            source.read(start, end - start, pixels, width);
+            FastBlur.blur(pixels, 0, width, width, end - start, radius, null, workspace);
+            sink.write(y, rows, pixels, (y - start) * width, width);
+        }
+    }
+
+    /**
+     * 按条带解码并虚化图片，解码时也只占用一个条带的内存
+     *
+     * @param decoder 原图的区域解码器
+     * @param radius  虚化半径
+     * @param config  输出图片的格式，不透明的图片可以使用RGB_565减少一半内存
+     * @return 与原图尺寸相同的虚化图片
+     */
+    public static Bitmap blur(@NonNull final BitmapRegionDecoder decoder, int radius, @NonNull Bitmap.Config config) {
+        final int width = decoder.getWidth();
+        final int height = decoder.getHeight();
+        final Bitmap output = Bitmap.createBitmap(width, height, config);
+        final int stripeRows = Math.max(DEFAULT_STRIPE_ROWS, radius);
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        // the decoder draws every region into this bitmap, so the stripes share one allocation
+        options.inBitmap = Bitmap.createBitmap(width, Math.min(height, stripeRows + 2 * Math.max(0, radius)),
+                Bitmap.Config.ARGB_8888);
+        final Rect region = new Rect();
+        blur(width, height, radius, stripeRows, new PixelSource() {
+            @Override
+            public void read(int y, int rows, @NonNull int[] pixels, int stride) {
+                region.set(0, y, width, y + rows);
+                Bitmap stripe = decoder.decodeRegion(region, options);
+                stripe.getPixels(pixels, 0, stride, 0, 0, width, rows);
+                if (stripe != options.inBitmap) {
+                    stripe.recycle();
+                }
+            }
+        }, new PixelSink() {
+            @Override
+            public void write(int y, int rows, @NonNull int[] pixels, int offset, int stride) {
+                output.setPixels(pixels, offset, stride, 0, y, width, rows);
+            }
+        }, null);
+        options.inBitmap.recycle();
+        return output;
+    }
+
+    /**
+     * 按条带虚化图片，不需要分配整张图片的像素数组和通道数组
+     *
+     * @param source 原始图片，不会被修改
+     * @param radius 虚化半径
+     * @param output 输出图片，尺寸必须与原始图片相同，不能是原始图片本身
+     * @return 虚化后的图片，即output
+     */
+    public static Bitmap blur(@NonNull final Bitmap source, int radius, @NonNull final Bitmap output) {
+        final int width = source.getWidth();
+        final int height = source.getHeight();
+        if (output.getWidth() != width || output.getHeight() != height) {
+            throw new IllegalArgumentException("The output size must be the same as the source");
+        }
+        if (output == source) {
+            // the overlap rows of the next stripe would be read after they are blurred
+            throw new IllegalArgumentException("The output can not be the source");
+        }
+        blur(width, height, radius, Math.max(DEFAULT_STRIPE_ROWS, radius), new PixelSource() {
+            @Override
+            public void read(int y, int rows, @NonNull int[] pixels, int stride) {
+                source.getPixels(pixels, 0, stride, 0, y, width, rows);
+            }
+        }, new PixelSink() {
+            @Override
+            public void write(int y, int rows, @NonNull int[] pixels, int offset, int stride) {
+                output.setPixels(pixels, offset, stride, 0, y, width, rows);
+            }
+        }, null);
+        return output;
+    }
+}
@@ -6,7 +6,9 @@ import android.animation.ValueAnimator;
 import android.graphics.Canvas;
 import android.graphics.ColorFilter;
 import android.graphics.PixelFormat;
+import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -16,12 +18,49 @@ import androidx.annotation.Nullable;
  * {@link android.graphics.drawable.TransitionDrawable}.
  * <p>
  * Call {@link #fadeChange(Drawable, int)} to change the resource.
+ * <p>
+ * It is aware of the opacity of its layers: an opaque old drawable is drawn without alpha under the new one,
+ * so the new drawable fades in over it, and the old one is skipped and evicted once the new one is fully opaque.
+ * It reports {@link PixelFormat#OPAQUE} when the displayed content is opaque, so the host can skip drawing
+ * what is behind it. Call {@link #setLayerFadeEnabled(boolean)} to fade a layer of overlapping content
+ * in an offscreen layer.
  */
 public class CrossFadeDrawable extends Drawable {
     private Drawable mFront;
     private Drawable mBackground;
+    private boolean isFrontOpaque;
+    private boolean isBackgroundOpaque;
     private ValueAnimator mAnimator;
     private float mAnimPosition;
+    private int mAlpha = 255;
+    private boolean isLayerFadeEnabled;
+    private OnEvictListener mOnEvictListener;
+    private OnFirstFrameListener mOnFirstFrameListener;
+    private Drawable mFirstFrameDrawable;
+
+    /**
+     * Listener to know a drawable is no longer displayed
+     */
+    public interface OnEvictListener {
+        /**
+         * Called when the cross-fade ends and the old drawable is no longer drawn
+         *
+         * @param drawable the drawable replaced by the new one
+         */
+        void onEvicted(@NonNull Drawable drawable);
+    }
+
+    /**
+     * Listener to know a new drawable is drawn
+     */
+    public interface OnFirstFrameListener {
+        /**
+         * Called in {@link #draw(Canvas)} after the new drawable is drawn for the first time
+         *
+         * @param drawable the new drawable set by {@link #fadeChange(Drawable, int)}
+         */
+        void onFirstFrame(@NonNull Drawable drawable);
+    }
 
     public CrossFadeDrawable() {
         initAnimator();
@@ -33,22 +72,25 @@ public class CrossFadeDrawable extends Drawable {
             @Override
             public void onAnimationUpdate(ValueAnimator animation) {
                 mAnimPosition = (float) animation.getAnimatedValue();
-                if (mFront != null) {
-                    mFront.setAlpha((int) (255 * (1 - mAnimPosition)));
-                }
-                if (mBackground != null) {
-                    mBackground.setAlpha((int) (255 * mAnimPosition));
-                }
                 invalidateSelf();
             }
         });
         mAnimator.addListener(new AnimatorListenerAdapter() {
             @Override
             public void onAnimationEnd(Animator animation) {
+                if (mBackground == null) {
+                    return;
+                }
+                Drawable evicted = mFront;
+                // drop the old drawable at once, it is no longer drawn
                 mFront = mBackground;
-                mFront.setAlpha(255);
+                isFrontOpaque = isBackgroundOpaque;
                 mBackground = null;
+                isBackgroundOpaque = false;
                 invalidateSelf();
+                if (evicted != null && evicted != mFront && mOnEvictListener != null) {
+                    mOnEvictListener.onEvicted(evicted);
+                }
             }
         });
     }
@@ -56,6 +98,7 @@ public class CrossFadeDrawable extends Drawable {
     public void initDrawable(@NonNull Drawable drawable) {
         mFront = drawable;
         mFront.setBounds(getBounds());
+        isFrontOpaque = isOpaque(mFront);
         invalidateSelf();
     }
 
@@ -70,12 +113,46 @@ public class CrossFadeDrawable extends Drawable {
             mAnimator.cancel();
         }
         mBackground = drawable;
+        mFirstFrameDrawable = drawable;
         mBackground.setBounds(getBounds());
-        mBackground.setAlpha(0);
+        isBackgroundOpaque = isOpaque(mBackground);
+        mAnimPosition = 0;
         mAnimator.setDuration(duration);
         mAnimator.start();
     }
 
+    /**
+     * Set a listener to know when the old drawable is no longer displayed,
+     * so the resource of the old drawable can be reused
+     *
+     * @param listener the listener, null to remove
+     */
+    public void setOnEvictListener(@Nullable OnEvictListener listener) {
+        mOnEvictListener = listener;
+    }
+
+    /**
+     * Set a listener to know when the new drawable is drawn for the first time
+     *
+     * @param listener the listener, null to remove
+     */
+    public void setOnFirstFrameListener(@Nullable OnFirstFrameListener listener) {
+        mOnFirstFrameListener = listener;
+    }
+
+    /**
+     * Set the fading drawable is drawn in an offscreen layer, and the alpha is applied once to the whole layer.
+     * It is needed when the drawable draws overlapping content, such as a {@link RatioDrawableWrapper} with a
+     * color mask which is not baked, otherwise each part of it is faded separately. The layer is hardware
+     * accelerated if the host is, but it still costs an offscreen buffer in every frame of the fade,
+     * so keep it off for the baked or bitmap drawables.
+     *
+     * @param enabled true to fade in an offscreen layer, default is false
+     */
+    public void setLayerFadeEnabled(boolean enabled) {
+        isLayerFadeEnabled = enabled;
+    }
+
     /**
      * Release the drawable
      */
@@ -87,24 +164,77 @@ public class CrossFadeDrawable extends Drawable {
 
     @Override
     public void draw(@NonNull Canvas canvas) {
-        if (mFront != null) {
-            mFront.draw(canvas);
+        int backgroundAlpha = mBackground == null ? 0 : (int) (mAlpha * mAnimPosition);
+        // the opaque new drawable covers the old one totally
+        boolean isCovered = mBackground != null && isBackgroundOpaque && backgroundAlpha == 255;
+        if (mFront != null && !isCovered) {
+            // the opaque old drawable keeps under the new one, so nothing behind shows through during the fade
+            int frontAlpha = mBackground == null || isFrontOpaque ? mAlpha : (int) (mAlpha * (1 - mAnimPosition));
+            drawLayer(canvas, mFront, frontAlpha);
         }
         if (mBackground != null) {
-            mBackground.draw(canvas);
+            drawLayer(canvas, mBackground, backgroundAlpha);
+        }
+        if (mFirstFrameDrawable != null && (mFirstFrameDrawable == mBackground || mFirstFrameDrawable == mFront)) {
+            Drawable drawn = mFirstFrameDrawable;
+            mFirstFrameDrawable = null;
+            if (mOnFirstFrameListener != null) {
+                mOnFirstFrameListener.onFirstFrame(drawn);
+            }
         }
     }
 
+    private void drawLayer(Canvas canvas, Drawable drawable, int alpha) {
+        if (alpha <= 0) {
+            return;
+        }
+        if (alpha < 255 && isLayerFadeEnabled) {
+            Rect bounds = getBounds();
+            int count;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                count = canvas.saveLayerAlpha(bounds.left, bounds.top, bounds.right, bounds.bottom, alpha);
+            } else {
+                count = canvas.saveLayerAlpha(bounds.left, bounds.top, bounds.right, bounds.bottom, alpha,
+                        Canvas.ALL_SAVE_FLAG);
+            }
+            drawable.setAlpha(255);
+            drawable.draw(canvas);
+            canvas.restoreToCount(count);
+        } else {
+            drawable.setAlpha(alpha);
+            drawable.draw(canvas);
+        }
+    }
+
+    private static boolean isOpaque(Drawable drawable) {
+        // the alpha is set again before drawn
+        drawable.setAlpha(255);
+        return drawable.getOpacity() == PixelFormat.OPAQUE;
+    }
+
     @Override
-    public void setAlpha(int alpha) {
+    protected void onBoundsChange(Rect bounds) {
         if (mFront != null) {
-            mFront.setAlpha(alpha);
+            mFront.setBounds(bounds);
+            isFrontOpaque = isOpaque(mFront);
         }
         if (mBackground != null) {
-            mBackground.setAlpha(alpha);
+            mBackground.setBounds(bounds);
+            isBackgroundOpaque = isOpaque(mBackground);
         }
     }
 
+    @Override
+    public void setAlpha(int alpha) {
+        mAlpha = alpha;
+        invalidateSelf();
+    }
+
+    @Override
+    public int getAlpha() {
+        return mAlpha;
+    }
+
     @Override
     public void setColorFilter(@Nullable ColorFilter colorFilter) {
         if (mFront != null) {
@@ -117,6 +247,13 @@ public class CrossFadeDrawable extends Drawable {
 
     @Override
     public int getOpacity() {
+        if (mAlpha < 255) {
+            return PixelFormat.TRANSLUCENT;
+        }
+        // the opaque old drawable is drawn without alpha, and the new one is drawn alone once it is opaque
+        if ((mFront != null && isFrontOpaque) || (mBackground != null && isBackgroundOpaque && mAnimPosition >= 1)) {
+            return PixelFormat.OPAQUE;
+        }
         return PixelFormat.TRANSLUCENT;
     }
 }
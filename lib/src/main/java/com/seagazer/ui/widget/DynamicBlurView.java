@@ -1,43 +1,132 @@
 package com.seagazer.ui.widget;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
 import android.graphics.drawable.ColorDrawable;
-import android.renderscript.Allocation;
-import android.renderscript.Element;
-import android.renderscript.RenderScript;
-import android.renderscript.ScriptIntrinsicBlur;
+import android.os.Build;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.view.View;
+import android.view.ViewTreeObserver;
 
 import androidx.annotation.ColorInt;
 import androidx.annotation.FloatRange;
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.RecyclerView;
 
 import com.seagazer.ui.R;
+import com.seagazer.ui.image.BlurEngine;
+import com.seagazer.ui.image.BlurEngines;
+import com.seagazer.ui.image.BlurPipeline;
+import com.seagazer.ui.image.BlurService;
 import com.seagazer.ui.util.Logger;
 
 /**
  * 实时动态模糊
  * 可以通过调用{@link #setTargetView(View)} 设置动态模糊目标
  * 调用{@link #invalidate()} 刷新模糊状态
+ * 模糊半径以目标缩小{@link #MIN_SCALE}倍后的尺寸为基准，超过25时由{@link BlurPipeline}自动加大降采样倍数或者增加模糊次数
+ * 调用{@link #setRefreshOnChange(boolean)} 只在目标内容变化时重新模糊，静止画面不再产生模糊开销
+ * 调用{@link #setMaxBlurRate(int)} 限制每秒最多模糊的次数
+ * 只截取和模糊目标中位于本view下方的区域，四周多保留一个模糊半径的边距，底栏一类的遮罩只需处理很小一部分像素
+ * 调用{@link #setAsyncBlur(boolean)} 在后台线程模糊，绘制时显示最近一次完成的模糊结果，不再阻塞UI线程
+ * 调用{@link #setScrollAware(boolean)} 目标滚动时平移上一次的模糊结果，只重新模糊新露出的部分，目标为RecyclerView时自动监听滚动，
+ * 其他滚动容器可以调用{@link #notifyTargetScrolled(int, int)} 通知滚动距离，滚动停止后会完整模糊一次以消除拼接误差
+ * 目标不透明时可以调用{@link #setOpaqueBuffers(boolean)} 使用RGB_565格式的缓冲区，内存和带宽减半
+ * 缓冲区尺寸变化时优先复用已有的内存，从窗口移除或者系统内存紧张时释放缓冲区，下次绘制时重新创建
  */
 public class DynamicBlurView extends View {
-    private static final float SCALE = 4;
+    private static final int MIN_SCALE = 4;
     private static final int DEFAULT_OVERLAY = -1;
     private static final int DEFAULT_RADIUS = 15;
     private Bitmap mDrawBitmap;
-    private RenderScript mRenderScript;
-    private ScriptIntrinsicBlur mScriptIntrinsicBlur;
-    private Allocation mAllocationIn, mAllocationOut;
+    private Bitmap mBackBitmap;
+    private BlurEngine mBlurEngine;
+    private boolean hasCustomEngine;
     private View mTarget;
     private Canvas mTempCanvas;
     private Bitmap mTempBitmap;
     private float mBlurRadius;
+    private BlurPipeline.Plan mPlan;
+    private final Rect mRegion = new Rect();
+    private int mDrawLeft;
+    private int mDrawTop;
     private int mOverlayColor;
+    private boolean isRefreshOnChange;
+    private boolean isContentDirty = true;
+    private long mMinBlurInterval;
+    private long mLastBlurTime;
+    private boolean isAsyncBlur;
+    private BlurService.Request mPendingBlur;
+    private boolean isPresentingBlur;
+    private Bitmap.Config mBufferConfig = Bitmap.Config.ARGB_8888;
+    private boolean isScrollAware;
+    private boolean isScrollShifted;
+    private int mScrollDx;
+    private int mScrollDy;
+    private Bitmap mShiftBitmap;
+    private Bitmap mBandInput;
+    private Bitmap mBandOutput;
+    private Bitmap mWorkBitmap;
+    private Canvas mHelperCanvas;
+    private Paint mCopyPaint;
+    private final Rect mStripRect = new Rect();
+    private final Rect mBandRect = new Rect();
+    private final Rect mSeamRect = new Rect();
+    private final Rect mSrcRect = new Rect();
+    private final RecyclerView.OnScrollListener mScrollListener = new RecyclerView.OnScrollListener() {
+        @Override
+        public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+            notifyTargetScrolled(dx, dy);
+        }
+
+        @Override
+        public void onScrollStateChanged(@NonNull RecyclerView recyclerView, int newState) {
+            if (newState == RecyclerView.SCROLL_STATE_IDLE && (isScrollShifted || mScrollDx != 0 || mScrollDy != 0)) {
+                // blur the whole region once to remove the seams of the incremental blurs
+                isContentDirty = true;
+                invalidate();
+            }
+        }
+    };
+    private final ComponentCallbacks2 mTrimMemoryCallback = new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(int level) {
+            if (level >= TRIM_MEMORY_RUNNING_LOW) {
+                releaseBuffers();
+            }
+        }
+
+        @Override
+        public void onConfigurationChanged(@NonNull Configuration newConfig) {
+        }
+
+        @Override
+        public void onLowMemory() {
+            releaseBuffers();
+        }
+    };
+    private final ViewTreeObserver.OnPreDrawListener mPreDrawListener = new ViewTreeObserver.OnPreDrawListener() {
+        @Override
+        public boolean onPreDraw() {
+            // the target is drawn before this view, check its dirty state before the draw pass clears it
+            if (mTarget != null && mTarget.isDirty()) {
+                markDirty();
+                invalidate();
+            }
+            return true;
+        }
+    };
 
     public DynamicBlurView(Context context) {
         this(context, null);
@@ -52,56 +141,284 @@ public class DynamicBlurView extends View {
         TypedArray ta = context.obtainStyledAttributes(attrs, R.styleable.DynamicBlurView);
         mOverlayColor = ta.getColor(R.styleable.DynamicBlurView_overlayColor, -DEFAULT_OVERLAY);
         mBlurRadius = ta.getInt(R.styleable.DynamicBlurView_blurRadius, DEFAULT_RADIUS);
+        isRefreshOnChange = ta.getBoolean(R.styleable.DynamicBlurView_refreshOnChange, false);
+        setMaxBlurRate(ta.getInt(R.styleable.DynamicBlurView_maxBlurRate, 0));
+        isAsyncBlur = ta.getBoolean(R.styleable.DynamicBlurView_asyncBlur, false);
+        if (ta.getBoolean(R.styleable.DynamicBlurView_opaqueBuffers, false)) {
+            mBufferConfig = Bitmap.Config.RGB_565;
+        }
         ta.recycle();
-        initRender();
+        // the benchmark of engines is too slow for inflating, blur by the fallback until the best one is selected
+        mBlurEngine = BlurEngines.current(context);
+        BlurEngines.best(context, new BlurEngines.OnSelectedListener() {
+            @Override
+            public void onSelected(@NonNull BlurEngine engine) {
+                if (!hasCustomEngine) {
+                    mBlurEngine = engine;
+                }
+            }
+        });
+        mPlan = BlurPipeline.plan(mBlurRadius * MIN_SCALE, MIN_SCALE);
     }
 
-    private void initRender() {
-        mRenderScript = RenderScript.create(getContext());
-        mScriptIntrinsicBlur = ScriptIntrinsicBlur.create(mRenderScript, Element.U8_4(mRenderScript));
-        mScriptIntrinsicBlur.setRadius(mBlurRadius);
+    /**
+     * 计算需要模糊的区域，即本view在目标上覆盖的部分加上模糊半径的边距
+     *
+     * @return 区域是否有效，本view没有覆盖目标时返回false
+     */
+    private boolean computeRegion() {
+        int scale = mPlan.scale;
+        int margin = (int) Math.ceil(mBlurRadius * MIN_SCALE);
+        float dx = getX() - mTarget.getX();
+        float dy = getY() - mTarget.getY();
+        int left = Math.max(0, (int) Math.floor(dx) - margin);
+        int top = Math.max(0, (int) Math.floor(dy) - margin);
+        int right = Math.min(mTarget.getWidth(), (int) Math.ceil(dx + getWidth()) + margin);
+        int bottom = Math.min(mTarget.getHeight(), (int) Math.ceil(dy + getHeight()) + margin);
+        // align to the sampling grid, otherwise the downscaled content shimmers while this view moves
+        left -= left % scale;
+        top -= top % scale;
+        if (right - left < scale || bottom - top < scale) {
+            return false;
+        }
+        if (left != mRegion.left || top != mRegion.top || right != mRegion.right || bottom != mRegion.bottom) {
+            mRegion.set(left, top, right, bottom);
+            isContentDirty = true;
+        }
+        return true;
     }
 
     private boolean prepare() {
-        if (mRenderScript == null || mTempCanvas == null || mDrawBitmap == null) {
-            try {
-                mTempBitmap = Bitmap.createBitmap((int) (mTarget.getWidth() / SCALE), (int) (mTarget.getHeight() / SCALE), Bitmap.Config.ARGB_8888);
+        int scale = mPlan.scale;
+        int width = mRegion.width() / scale;
+        int height = mRegion.height() / scale;
+        if (mTempCanvas != null && mDrawBitmap != null
+                && mTempBitmap.getWidth() == width && mTempBitmap.getHeight() == height) {
+            return true;
+        }
+        // the running blur still uses the old buffers
+        cancelAsyncBlur();
+        try {
+            mTempBitmap = obtainBuffer(mTempBitmap, width, height);
+            if (mTempCanvas == null) {
                 mTempCanvas = new Canvas(mTempBitmap);
-                mTempCanvas.scale(1.0f / SCALE, 1.0f / SCALE);
-                mDrawBitmap = Bitmap.createBitmap((int) (mTarget.getWidth() / SCALE), (int) (mTarget.getHeight() / SCALE), Bitmap.Config.ARGB_8888);
-                mAllocationIn = Allocation.createFromBitmap(mRenderScript, mTempBitmap, Allocation.MipmapControl.MIPMAP_NONE, Allocation.USAGE_SCRIPT);
-                mAllocationOut = Allocation.createTyped(mRenderScript, mAllocationIn.getType());
-                return true;
-            } catch (Exception e) {
-                Logger.e(e.getMessage());
-                return false;
+            } else {
+                mTempCanvas.setBitmap(mTempBitmap);
             }
+            mDrawBitmap = obtainBuffer(mDrawBitmap, width, height);
+            if (mBackBitmap != null) {
+                mBackBitmap = obtainBuffer(mBackBitmap, width, height);
+            }
+            // new buffers are empty, blur them at once whatever the blur rate is
+            isContentDirty = true;
+            mLastBlurTime = 0;
+            return true;
+        } catch (Exception e) {
+            Logger.e(e.getMessage());
+            return false;
         }
-        return true;
+    }
+
+    /**
+     * 获取指定尺寸的缓冲区，旧缓冲区的内存足够时直接复用，否则回收后重新创建
+     *
+     * @param reuse  旧缓冲区
+     * @param width  宽度
+     * @param height 高度
+     * @return 内容为透明的缓冲区
+     */
+    private Bitmap obtainBuffer(@Nullable Bitmap reuse, int width, int height) {
+        if (reuse != null && !reuse.isRecycled()) {
+            int bytesPerPixel = mBufferConfig == Bitmap.Config.RGB_565 ? 2 : 4;
+            if (reuse.getAllocationByteCount() >= width * height * bytesPerPixel) {
+                reuse.reconfigure(width, height, mBufferConfig);
+                reuse.eraseColor(Color.TRANSPARENT);
+                return reuse;
+            }
+            reuse.recycle();
+        }
+        return Bitmap.createBitmap(width, height, mBufferConfig);
+    }
+
+    /**
+     * 释放所有缓冲区，下次绘制时重新创建
+     */
+    private void releaseBuffers() {
+        cancelAsyncBlur();
+        if (mTempBitmap != null) {
+            mTempBitmap.recycle();
+            mTempBitmap = null;
+        }
+        if (mDrawBitmap != null) {
+            mDrawBitmap.recycle();
+            mDrawBitmap = null;
+        }
+        if (mBackBitmap != null) {
+            mBackBitmap.recycle();
+            mBackBitmap = null;
+        }
+        if (mShiftBitmap != null) {
+            mShiftBitmap.recycle();
+            mShiftBitmap = null;
+        }
+        if (mBandInput != null) {
+            mBandInput.recycle();
+            mBandInput = null;
+        }
+        if (mBandOutput != null) {
+            mBandOutput.recycle();
+            mBandOutput = null;
+        }
+        if (mWorkBitmap != null) {
+            mWorkBitmap.recycle();
+            mWorkBitmap = null;
+        }
+        mTempCanvas = null;
+        isContentDirty = true;
     }
 
     protected void blur() {
-        mAllocationIn.copyFrom(mTempBitmap);
-        mScriptIntrinsicBlur.setInput(mAllocationIn);
-        mScriptIntrinsicBlur.forEach(mAllocationOut);
-        mAllocationOut.copyTo(mDrawBitmap);
+        blur(mBlurEngine, mPlan, mTempBitmap, mDrawBitmap, obtainWorkBuffer(mTempBitmap));
+    }
+
+    /**
+     * 获取RGB_565缓冲区虚化时使用的ARGB_8888工作缓冲区，跨帧复用
+     *
+     * @param input 需要虚化的缓冲区
+     * @return 与输入尺寸一致的工作缓冲区，缓冲区为ARGB_8888格式时不需要，返回null
+     */
+    @Nullable
+    private Bitmap obtainWorkBuffer(Bitmap input) {
+        if (mBufferConfig != Bitmap.Config.RGB_565 || mPlan.passes == 0) {
+            return null;
+        }
+        int width = input.getWidth();
+        int height = input.getHeight();
+        if (mWorkBitmap != null && !mWorkBitmap.isRecycled()) {
+            if (mWorkBitmap.getAllocationByteCount() >= width * height * 4) {
+                mWorkBitmap.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+                return mWorkBitmap;
+            }
+            mWorkBitmap.recycle();
+        }
+        mWorkBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        return mWorkBitmap;
+    }
+
+    private static void blur(BlurEngine engine, BlurPipeline.Plan plan, Bitmap input, Bitmap output,
+                             @Nullable Bitmap work) {
+        if (plan.passes == 0) {
+            return;
+        }
+        if (work == null) {
+            engine.blur(input, output, plan.radius);
+            for (int i = 1; i < plan.passes; i++) {
+                engine.blur(output, output, plan.radius);
+            }
+            return;
+        }
+        // convert the RGB_565 buffers only at the edges, every pass runs on the ARGB_8888 work buffer
+        new Canvas(work).drawBitmap(input, 0, 0, null);
+        for (int i = 0; i < plan.passes; i++) {
+            engine.blur(work, work, plan.radius);
+        }
+        new Canvas(output).drawBitmap(work, 0, 0, null);
+    }
+
+    private void blurAsync() {
+        if (mBackBitmap == null) {
+            mBackBitmap = Bitmap.createBitmap(mDrawBitmap.getWidth(), mDrawBitmap.getHeight(), mBufferConfig);
+        }
+        // the worker owns the snapshot and the back buffer until the request finishes
+        final BlurEngine engine = mBlurEngine;
+        final BlurPipeline.Plan plan = mPlan;
+        final Bitmap input = mTempBitmap;
+        final Bitmap output = mBackBitmap;
+        final Bitmap work = obtainWorkBuffer(input);
+        final int left = mRegion.left;
+        final int top = mRegion.top;
+        mPendingBlur = BlurService.get(getContext()).submit(this, new BlurService.Job() {
+            @Override
+            public Bitmap run(@NonNull BlurEngine best) {
+                blur(engine, plan, input, output, work);
+                return output;
+            }
+        }, new BlurService.FailureCallback() {
+            @Override
+            public void onFailed() {
+                // keep the last result, and blur the snapshot again in the next draw
+                mPendingBlur = null;
+                isContentDirty = true;
+                invalidate();
+            }
+
+            @Override
+            public void onBlurred(@NonNull Bitmap result) {
+                mPendingBlur = null;
+                if (result == mBackBitmap) {
+                    // swap the front and back buffers, the old front will receive the next blur
+                    mBackBitmap = mDrawBitmap;
+                    mDrawBitmap = result;
+                    mDrawLeft = left;
+                    mDrawTop = top;
+                }
+                // this draw only presents the result, it must not start another blur by itself
+                isPresentingBlur = true;
+                invalidate();
+            }
+        });
+    }
+
+    private void cancelAsyncBlur() {
+        if (mPendingBlur != null) {
+            mPendingBlur.cancel();
+            mPendingBlur = null;
+            // a running job may still touch the buffers, leave them to it and create new ones
+            mTempBitmap = null;
+            mTempCanvas = null;
+            mDrawBitmap = null;
+            mBackBitmap = null;
+            mWorkBitmap = null;
+        }
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
-        if (mTarget != null && prepare()) {
-            // if set background color ,erase the background color
-            if (mTarget.getBackground() != null && mTarget.getBackground() instanceof ColorDrawable) {
-                mTempBitmap.eraseColor(((ColorDrawable) mTarget.getBackground()).getColor());
-            } else {
-                mTempBitmap.eraseColor(Color.TRANSPARENT);
+        boolean isPresenting = isPresentingBlur;
+        isPresentingBlur = false;
+        if (mTarget != null && computeRegion() && prepare()) {
+            if (mPendingBlur != null) {
+                // the snapshot is being blurred, capture again after it is done
+                markDirty();
+            } else if (isPresenting && !isContentDirty && !hasPendingScroll()) {
+                // nothing changed while blurring, present the finished buffer only
+            } else if (needBlur()) {
+                long now = SystemClock.uptimeMillis();
+                long wait = mLastBlurTime + mMinBlurInterval - now;
+                if (wait > 0) {
+                    // over the max blur rate, draw the last result and blur again later
+                    markDirty();
+                    postInvalidateDelayed(wait);
+                } else if (isContentDirty || !hasPendingScroll() || !scrollBlur()) {
+                    capture();
+                    if (isAsyncBlur && mPlan.passes > 0) {
+                        blurAsync();
+                    } else {
+                        blur();
+                        mDrawLeft = mRegion.left;
+                        mDrawTop = mRegion.top;
+                    }
+                    isContentDirty = false;
+                    mLastBlurTime = now;
+                } else {
+                    mLastBlurTime = now;
+                }
             }
-            mTarget.draw(mTempCanvas);
-            blur();
             canvas.save();
-            canvas.translate(mTarget.getX() - getX(), mTarget.getY() - getY());
-            canvas.scale(SCALE, SCALE);
-            canvas.drawBitmap(mDrawBitmap, 0, 0, null);
+            // the buffers lag behind the target by the scroll distance that is not shifted yet
+            canvas.translate(mTarget.getX() - getX() + mDrawLeft - mScrollDx, mTarget.getY() - getY() + mDrawTop - mScrollDy);
+            canvas.scale(mPlan.scale, mPlan.scale);
+            canvas.drawBitmap(mPlan.passes == 0 ? mTempBitmap : mDrawBitmap, 0, 0, null);
             canvas.restore();
             if (mOverlayColor != -1) {
                 canvas.drawColor(mOverlayColor);
@@ -109,23 +426,272 @@ public class DynamicBlurView extends View {
         }
     }
 
+    private boolean needBlur() {
+        // View#isDirty is available since api 21, blur every draw as before on older platforms
+        return !isRefreshOnChange || isContentDirty || hasPendingScroll()
+                || Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP;
+    }
+
+    private void markDirty() {
+        // scrolling alone is handled by shifting the buffers, do not force a full blur for it
+        if (!hasPendingScroll()) {
+            isContentDirty = true;
+        }
+    }
+
+    private boolean hasPendingScroll() {
+        int scale = mPlan.scale;
+        return isScrollAware && (Math.abs(mScrollDx) >= scale || Math.abs(mScrollDy) >= scale);
+    }
+
+    private int getTargetBackgroundColor() {
+        // if set background color ,erase the background color
+        if (mTarget.getBackground() != null && mTarget.getBackground() instanceof ColorDrawable) {
+            return ((ColorDrawable) mTarget.getBackground()).getColor();
+        }
+        return Color.TRANSPARENT;
+    }
+
+    private void capture() {
+        mTempBitmap.eraseColor(getTargetBackgroundColor());
+        // a full capture catches up with the target
+        mScrollDx = 0;
+        mScrollDy = 0;
+        isScrollShifted = false;
+        int scale = mPlan.scale;
+        mTempCanvas.save();
+        mTempCanvas.scale(1.0f / scale, 1.0f / scale);
+        mTempCanvas.translate(-mRegion.left, -mRegion.top);
+        mTarget.draw(mTempCanvas);
+        mTempCanvas.restore();
+    }
+
+    /**
+     * 平移上一次的截图和模糊结果，只截取和模糊新露出的部分，
+     * 新露出部分外侧再多模糊一个模糊半径的接缝，读取时还需要一个模糊半径的上下文
+     *
+     * @return 是否完成，只能沿一个方向平移或者平移距离过大时返回false，需要完整模糊
+     */
+    private boolean scrollBlur() {
+        int scale = mPlan.scale;
+        int sx = mScrollDx / scale;
+        int sy = mScrollDy / scale;
+        if (mPlan.passes == 0 || (sx != 0 && sy != 0)) {
+            return false;
+        }
+        int width = mDrawBitmap.getWidth();
+        int height = mDrawBitmap.getHeight();
+        int seam = (int) Math.ceil(mPlan.radius) * mPlan.passes;
+        boolean vertical = sy != 0;
+        int length = vertical ? height : width;
+        int shift = vertical ? sy : sx;
+        int exposed = Math.abs(shift);
+        int bandStart, bandEnd, seamStart, seamEnd, stripStart, stripEnd;
+        if (shift > 0) {
+            stripStart = length - exposed;
+            stripEnd = length;
+            seamStart = Math.max(0, stripStart - seam);
+            seamEnd = length;
+            bandStart = Math.max(0, stripStart - 2 * seam);
+            bandEnd = length;
+        } else {
+            stripStart = 0;
+            stripEnd = exposed;
+            seamStart = 0;
+            seamEnd = Math.min(length, exposed + seam);
+            bandStart = 0;
+            bandEnd = Math.min(length, exposed + 2 * seam);
+        }
+        if (2 * (bandEnd - bandStart) > length) {
+            // not cheaper than blurring the whole region
+            return false;
+        }
+        if (vertical) {
+            mStripRect.set(0, stripStart, width, stripEnd);
+            mSeamRect.set(0, seamStart, width, seamEnd);
+            mBandRect.set(0, bandStart, width, bandEnd);
+        } else {
+            mStripRect.set(stripStart, 0, stripEnd, height);
+            mSeamRect.set(seamStart, 0, seamEnd, height);
+            mBandRect.set(bandStart, 0, bandEnd, height);
+        }
+        if (mHelperCanvas == null) {
+            mHelperCanvas = new Canvas();
+            mCopyPaint = new Paint();
+            mCopyPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+        }
+        mTempBitmap = shift(mTempBitmap, sx, sy);
+        mTempCanvas.setBitmap(mTempBitmap);
+        mDrawBitmap = shift(mDrawBitmap, sx, sy);
+        mScrollDx -= sx * scale;
+        mScrollDy -= sy * scale;
+        captureStrip();
+        // blur the band with its context, then copy back the exposed strip and the seam only
+        mBandInput = obtainBuffer(mBandInput, mBandRect.width(), mBandRect.height());
+        mBandOutput = obtainBuffer(mBandOutput, mBandRect.width(), mBandRect.height());
+        mHelperCanvas.setBitmap(mBandInput);
+        mHelperCanvas.drawBitmap(mTempBitmap, -mBandRect.left, -mBandRect.top, mCopyPaint);
+        blur(mBlurEngine, mPlan, mBandInput, mBandOutput, obtainWorkBuffer(mBandInput));
+        mSrcRect.set(mSeamRect);
+        mSrcRect.offset(-mBandRect.left, -mBandRect.top);
+        mHelperCanvas.setBitmap(mDrawBitmap);
+        mHelperCanvas.drawBitmap(mBandOutput, mSrcRect, mSeamRect, mCopyPaint);
+        isScrollShifted = true;
+        return true;
+    }
+
+    private Bitmap shift(Bitmap bitmap, int dx, int dy) {
+        Bitmap shifted = obtainBuffer(mShiftBitmap, bitmap.getWidth(), bitmap.getHeight());
+        mHelperCanvas.setBitmap(shifted);
+        mHelperCanvas.drawBitmap(bitmap, -dx, -dy, mCopyPaint);
+        // the old buffer becomes the scratch of the next shift
+        mShiftBitmap = bitmap;
+        return shifted;
+    }
+
+    private void captureStrip() {
+        int scale = mPlan.scale;
+        mTempCanvas.save();
+        mTempCanvas.clipRect(mStripRect);
+        mTempCanvas.drawColor(getTargetBackgroundColor(), PorterDuff.Mode.SRC);
+        mTempCanvas.scale(1.0f / scale, 1.0f / scale);
+        // keep the strip aligned with the shifted buffer, which lags behind by the remaining scroll distance
+        mTempCanvas.translate(mScrollDx - mRegion.left, mScrollDy - mRegion.top);
+        mTarget.draw(mTempCanvas);
+        mTempCanvas.restore();
+    }
+
     /**
      * 设置模糊目标
      *
      * @param target 模糊的目标view
      */
     public void setTargetView(final View target) {
+        cancelAsyncBlur();
+        if (mTarget instanceof RecyclerView) {
+            ((RecyclerView) mTarget).removeOnScrollListener(mScrollListener);
+        }
+        if (target instanceof RecyclerView) {
+            ((RecyclerView) target).addOnScrollListener(mScrollListener);
+        }
+        mScrollDx = 0;
+        mScrollDy = 0;
         this.mTarget = target;
+        isContentDirty = true;
+    }
+
+    /**
+     * 设置是否只在目标内容变化时重新模糊，默认每次绘制都重新模糊
+     * 开启后会监听目标的重绘状态并自动刷新，不需要再手动调用{@link #invalidate()}，仅在api21及以上生效
+     *
+     * @param enable 是否只在目标内容变化时重新模糊
+     */
+    public void setRefreshOnChange(boolean enable) {
+        if (isRefreshOnChange == enable) {
+            return;
+        }
+        isRefreshOnChange = enable;
+        if (isAttachedToWindow()) {
+            if (enable) {
+                addPreDrawListener();
+            } else {
+                getViewTreeObserver().removeOnPreDrawListener(mPreDrawListener);
+            }
+        }
+        isContentDirty = true;
+        invalidate();
+    }
+
+    /**
+     * 设置是否按滚动距离增量模糊，默认关闭
+     * 开启后目标滚动时平移上一次的模糊结果，只重新模糊新露出的部分，滚动期间目标其他内容的变化要等到滚动停止后才会更新
+     *
+     * @param enable 是否按滚动距离增量模糊
+     */
+    public void setScrollAware(boolean enable) {
+        isScrollAware = enable;
+        mScrollDx = 0;
+        mScrollDy = 0;
+        isContentDirty = true;
+        invalidate();
+    }
+
+    /**
+     * 通知目标内容滚动的距离，目标为RecyclerView时会自动监听，不需要调用
+     *
+     * @param dx 水平滚动距离，内容向左移动时为正
+     * @param dy 竖直滚动距离，内容向上移动时为正
+     */
+    public void notifyTargetScrolled(int dx, int dy) {
+        if (!isScrollAware || (dx == 0 && dy == 0)) {
+            return;
+        }
+        mScrollDx += dx;
+        mScrollDy += dy;
+        invalidate();
+    }
+
+    /**
+     * 设置每秒最多模糊的次数，超出时显示上一次的模糊结果
+     *
+     * @param fps 每秒最多模糊的次数，0表示不限制
+     */
+    public void setMaxBlurRate(int fps) {
+        mMinBlurInterval = fps > 0 ? 1000 / fps : 0;
+    }
+
+    /**
+     * 设置是否在后台线程模糊，默认在绘制时同步模糊
+     * 开启后UI线程只负责截取目标内容，模糊完成前显示上一次的模糊结果
+     *
+     * @param enable 是否在后台线程模糊
+     */
+    public void setAsyncBlur(boolean enable) {
+        if (isAsyncBlur == enable) {
+            return;
+        }
+        cancelAsyncBlur();
+        isAsyncBlur = enable;
+        isContentDirty = true;
+        invalidate();
+    }
+
+    /**
+     * 设置是否使用RGB_565格式的缓冲区，默认使用ARGB_8888
+     * 只适用于不透明的目标，透明的部分会变成黑色
+     *
+     * @param opaque 是否使用RGB_565格式的缓冲区
+     */
+    public void setOpaqueBuffers(boolean opaque) {
+        Bitmap.Config config = opaque ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        if (config == mBufferConfig) {
+            return;
+        }
+        releaseBuffers();
+        mBufferConfig = config;
+        invalidate();
+    }
+
+    private void addPreDrawListener() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            getViewTreeObserver().addOnPreDrawListener(mPreDrawListener);
+        }
     }
 
     /**
      * 设置模糊力度
      *
-     * @param radius 模糊半径(0,25]
+     * @param radius 模糊半径，超过25时自动加大降采样倍数或者增加模糊次数
      */
-    public void setRadius(@FloatRange(from = 0, to = 25) float radius) {
+    public void setRadius(@FloatRange(from = 0) float radius) {
         this.mBlurRadius = radius;
-        mScriptIntrinsicBlur.setRadius(radius);
+        BlurPipeline.Plan plan = BlurPipeline.plan(radius * MIN_SCALE, MIN_SCALE);
+        if (plan.scale != mPlan.scale) {
+            // the pending result is in the old scale, drop it; the buffers are resized on next draw
+            cancelAsyncBlur();
+        }
+        mPlan = plan;
+        isContentDirty = true;
     }
 
     /**
@@ -137,12 +703,30 @@ public class DynamicBlurView extends View {
         this.mOverlayColor = color;
     }
 
+    /**
+     * 设置模糊引擎，默认使用{@link BlurEngines#best(Context)}，选出之前使用{@link BlurEngines#current(Context)}
+     *
+     * @param engine 模糊引擎
+     */
+    public void setBlurEngine(@NonNull BlurEngine engine) {
+        this.mBlurEngine = engine;
+        hasCustomEngine = true;
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (isRefreshOnChange) {
+            addPreDrawListener();
+        }
+        getContext().registerComponentCallbacks(mTrimMemoryCallback);
+    }
+
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
-        // release
-        if (mRenderScript != null) {
-            mRenderScript.destroy();
-        }
+        getViewTreeObserver().removeOnPreDrawListener(mPreDrawListener);
+        getContext().unregisterComponentCallbacks(mTrimMemoryCallback);
+        releaseBuffers();
     }
 }
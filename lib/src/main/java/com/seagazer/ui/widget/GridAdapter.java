@@ -41,6 +41,8 @@ public class GridAdapter extends RecyclerView.Adapter<GridAdapter.GridHolder> {
     private List<Grid> mGrids = new ArrayList<>();
     private OnItemClickListener mItemClickListener;
     private OnItemSelectListener mItemSelectListener;
+    private OnItemPrefetchListener mItemPrefetchListener;
+    private int mPrefetchRange;
     //    private RecyclerView.RecycledViewPool mRecycledPool;
     private int mGridType;
     public static final int TYPE_ROW = 0;
@@ -189,12 +191,47 @@ public class GridAdapter extends RecyclerView.Adapter<GridAdapter.GridHolder> {
                         if (mItemSelectListener != null) {
                             mItemSelectListener.onItemSelect(grid.getIndex(), position, view, adapter.getData(position));
                         }
+                        if (mItemPrefetchListener != null) {
+                            mItemPrefetchListener.onItemPrefetch(collectNeighbours(grid.getIndex(), position));
+                        }
                     }
                 });
             }
         }
     }
 
+    /**
+     * 收集焦点附近的数据，包括焦点本身、所在行或列前后各N个，以及相邻行或列中相同位置及其前后各N-1个，
+     * 按与焦点的距离由近到远排序，距离相同时所在行或列优先
+     */
+    private List<Object> collectNeighbours(int mainIndex, int position) {
+        List<Object> items = new ArrayList<>();
+        // the focused item ranks first, so its running prefetch is kept when the focus moves onto it
+        addItem(items, mainIndex, position);
+        for (int distance = 1; distance <= mPrefetchRange; distance++) {
+            addItem(items, mainIndex, position + distance);
+            addItem(items, mainIndex, position - distance);
+            int offset = distance - 1;
+            addItem(items, mainIndex + 1, position + offset);
+            addItem(items, mainIndex - 1, position + offset);
+            if (offset > 0) {
+                addItem(items, mainIndex + 1, position - offset);
+                addItem(items, mainIndex - 1, position - offset);
+            }
+        }
+        return items;
+    }
+
+    private void addItem(List<Object> items, int mainIndex, int position) {
+        if (mainIndex < 0 || mainIndex >= mGrids.size()) {
+            return;
+        }
+        BasePresenter presenter = mGrids.get(mainIndex).getPresenter();
+        if (position >= 0 && position < presenter.getItemCount()) {
+            items.add(presenter.getData(position));
+        }
+    }
+
     @Override
     public int getItemCount() {
         return mGrids.size();
@@ -241,6 +278,19 @@ public class GridAdapter extends RecyclerView.Adapter<GridAdapter.GridHolder> {
         void onItemSelect(int mainIndex, int position, View view, Object item);
     }
 
+    /**
+     * 预加载事件监听
+     */
+    public interface OnItemPrefetchListener {
+        /**
+         * 焦点移动后回调焦点附近的数据，可以在此预加载这些数据对应的资源(例如壁纸)，
+         * 不在本次回调中的数据说明焦点已经远离，应当取消其预加载
+         *
+         * @param items 焦点附近的数据，第一个为焦点本身，按与焦点的距离由近到远排序
+         */
+        void onItemPrefetch(List<Object> items);
+    }
+
     public void setOnItemClickListener(OnItemClickListener onItemClickListener) {
         this.mItemClickListener = onItemClickListener;
     }
@@ -248,4 +298,15 @@ public class GridAdapter extends RecyclerView.Adapter<GridAdapter.GridHolder> {
     public void setOnItemSelectListener(OnItemSelectListener onItemSelectListener) {
         this.mItemSelectListener = onItemSelectListener;
     }
+
+    /**
+     * 设置预加载事件监听，例如{@link WallpaperPrefetcher}
+     *
+     * @param range                  预加载所在行或列前后各多少个数据，相邻行或列的范围少一个
+     * @param onItemPrefetchListener 预加载事件监听
+     */
+    public void setOnItemPrefetchListener(int range, OnItemPrefetchListener onItemPrefetchListener) {
+        this.mPrefetchRange = range;
+        this.mItemPrefetchListener = onItemPrefetchListener;
+    }
 }
@@ -1,7 +1,12 @@
 package com.seagazer.ui.widget;
 
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 
 import androidx.annotation.ColorInt;
@@ -11,6 +16,9 @@ import androidx.annotation.Nullable;
 /**
  * A drawable wrapper to auto fill the vision with the max of width and height.
  * Set the {@link AlignMode} to clip the drawable, so it can fill this vision and keep the drawable ratio of width : height.
+ * <p>
+ * Call {@link #bake(int, int)} before display to render the clipped drawable and the color mask into a bitmap
+ * of the display size once, then every frame only draws this bitmap without scaling and filling the mask.
  */
 public class RatioDrawableWrapper extends Drawable {
     private Drawable mDrawable;
@@ -18,6 +26,8 @@ public class RatioDrawableWrapper extends Drawable {
     private AlignMode mAlignMode;
     private boolean isLandscape;
     private int mMaskColor = -1;
+    private Bitmap mBakedBitmap;
+    private final Paint mBakedPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
 
     /**
      * @param drawable the content drawable
@@ -30,6 +40,22 @@ public class RatioDrawableWrapper extends Drawable {
 
     @Override
     public void draw(@NonNull Canvas canvas) {
+        if (mBakedBitmap != null && mBakedBitmap.getWidth() == mWidth && mBakedBitmap.getHeight() == mHeight) {
+            Rect bounds = getBounds();
+            canvas.drawBitmap(mBakedBitmap, bounds.left, bounds.top, mBakedPaint);
+            return;
+        }
+        drawContent(canvas);
+    }
+
+    private boolean isFillBounds() {
+        float scale = isLandscape ? mWidth * 1.0f / mDrawable.getIntrinsicWidth()
+                : mHeight * 1.0f / mDrawable.getIntrinsicHeight();
+        return mDrawable.getIntrinsicWidth() * scale >= mWidth - 0.5f
+                && mDrawable.getIntrinsicHeight() * scale >= mHeight - 0.5f;
+    }
+
+    private void drawContent(Canvas canvas) {
         // the size of canvas is the same as this wrapperDrawable's bounds
         float scaleW = mWidth * 1.0f / mDrawable.getIntrinsicWidth();
         float scaleH = mHeight * 1.0f / mDrawable.getIntrinsicHeight();
@@ -56,6 +82,77 @@ public class RatioDrawableWrapper extends Drawable {
         canvas.restore();
     }
 
+    /**
+     * Render the clipped drawable and the color mask into a bitmap of the display size, it can be called in
+     * a background thread before this wrapper is displayed. After baked the content drawable is replaced by
+     * the baked bitmap, so the source can be released, and the bitmap is scaled to fill if the display size changes.
+     *
+     * @param width  the width of display
+     * @param height the height of display
+     */
+    public void bake(int width, int height) {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        setBounds(0, 0, width, height);
+        drawContent(new Canvas(bitmap));
+        bitmap.setDensity(Bitmap.DENSITY_NONE);
+        if (mDrawable.getOpacity() == PixelFormat.OPAQUE && isFillBounds()) {
+            // no transparent pixel, so it can be composed without blending and cached in jpeg
+            bitmap.setHasAlpha(false);
+        }
+        setBakedBitmap(bitmap);
+        setBounds(0, 0, width, height);
+    }
+
+    /**
+     * Create a wrapper of a baked wallpaper, such as the one kept in {@link WallpaperCache}
+     *
+     * @param bitmap the bitmap baked by {@link #bake(int, int)}
+     * @param mode   the mode to clip the bitmap if the display size changes
+     * @return the baked wrapper
+     */
+    public static RatioDrawableWrapper fromBaked(@NonNull Bitmap bitmap, @Nullable AlignMode mode) {
+        RatioDrawableWrapper wrapper = new RatioDrawableWrapper(null, mode);
+        wrapper.setBakedBitmap(bitmap);
+        return wrapper;
+    }
+
+    private void setBakedBitmap(Bitmap bitmap) {
+        BitmapDrawable drawable = new BitmapDrawable(null, bitmap);
+        drawable.setAlpha(mBakedPaint.getAlpha());
+        mDrawable = drawable;
+        // the mask is a part of the bitmap now
+        mMaskColor = -1;
+        mBakedBitmap = bitmap;
+    }
+
+    /**
+     * Get the baked bitmap
+     *
+     * @return the bitmap baked by {@link #bake(int, int)}, null if not baked
+     */
+    @Nullable
+    public Bitmap getBakedBitmap() {
+        return mBakedBitmap;
+    }
+
+    /**
+     * Check the wrapper is baked
+     *
+     * @return true if {@link #bake(int, int)} is called
+     */
+    public boolean isBaked() {
+        return mBakedBitmap != null;
+    }
+
+    /**
+     * Get the content drawable
+     *
+     * @return the content drawable
+     */
+    public Drawable getDrawable() {
+        return mDrawable;
+    }
+
     /**
      * Set a color mask overlay this drawable
      * @param color
@@ -78,16 +175,25 @@ public class RatioDrawableWrapper extends Drawable {
     @Override
     public void setAlpha(int alpha) {
         mDrawable.setAlpha(alpha);
+        mBakedPaint.setAlpha(alpha);
     }
 
     @Override
     public void setColorFilter(@Nullable ColorFilter colorFilter) {
         mDrawable.setColorFilter(colorFilter);
+        mBakedPaint.setColorFilter(colorFilter);
     }
 
     @Override
     public int getOpacity() {
-        return mDrawable.getOpacity();
+        if (mBakedBitmap != null && mBakedBitmap.getWidth() == mWidth && mBakedBitmap.getHeight() == mHeight) {
+            return mBakedBitmap.hasAlpha() || mBakedPaint.getAlpha() < 255 ? PixelFormat.TRANSLUCENT : PixelFormat.OPAQUE;
+        }
+        // an opaque drawable which can not fill the bounds still leaves transparent edges
+        if (mDrawable.getOpacity() == PixelFormat.OPAQUE && mWidth > 0 && mHeight > 0 && isFillBounds()) {
+            return PixelFormat.OPAQUE;
+        }
+        return PixelFormat.TRANSLUCENT;
     }
 
 }
\ No newline at end of file
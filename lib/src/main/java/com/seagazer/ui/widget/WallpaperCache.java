@@ -0,0 +1,281 @@
+package com.seagazer.ui.widget;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.seagazer.ui.util.Logger;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A two-tier cache of the prepared wallpapers, which are clipped, masked and sized to the display.
+ * <p>
+ * The memory tier is a LRU cache bounded by bytes, the hit wallpaper can be displayed without any decoding.
+ * The disk tier keeps the prepared wallpapers in the cache directory of application, bounded by bytes too,
+ * the hit wallpaper is only decoded at the display size without sampling, blurring and masking again.
+ * Entries are keyed by the source key, the display size, the {@link AlignMode}, the mask color and the blur radius,
+ * see {@link #createKey(String, int, int, AlignMode, Integer, float)}.
+ * The bitmaps in cache are shared, the user must not modify or recycle them.
+ */
+public class WallpaperCache {
+    private static final String DIR_NAME = "wallpapers";
+    private static final long DEFAULT_DISK_BYTES = 64 * 1024 * 1024;
+    private static final int JPEG_QUALITY = 90;
+    private static WallpaperCache sDefault;
+    private final LruCache<String, Bitmap> mMemoryCache;
+    private final File mDirectory;
+    private final long mMaxDiskBytes;
+    private final Object mDiskLock = new Object();
+    private long mDiskBytes = -1;
+
+    /**
+     * @param context        context to get the cache directory
+     * @param maxMemoryBytes the max bytes of the memory cache
+     * @param maxDiskBytes   the max bytes of the disk cache, 0 means no disk cache
+     */
+    public WallpaperCache(@NonNull Context context, int maxMemoryBytes, long maxDiskBytes) {
+        mMemoryCache = new LruCache<String, Bitmap>(maxMemoryBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+        };
+        mDirectory = new File(context.getApplicationContext().getCacheDir(), DIR_NAME);
+        mMaxDiskBytes = maxDiskBytes;
+    }
+
+    /**
+     * Get the default cache, the memory cache is 1/8 of the max heap and the disk cache is 64MB
+     *
+     * @param context context to get the cache directory
+     * @return the default cache
+     */
+    public static synchronized WallpaperCache getDefault(@NonNull Context context) {
+        if (sDefault == null) {
+            sDefault = new WallpaperCache(context,
+                    (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8), DEFAULT_DISK_BYTES);
+        }
+        return sDefault;
+    }
+
+    /**
+     * Create the key of a prepared wallpaper
+     *
+     * @param source     the key of source, such as the uri or the path of image
+     * @param width      the width of display
+     * @param height     the height of display
+     * @param alignMode  the mode to clip the wallpaper
+     * @param maskColor  the color of mask, null means no mask
+     * @param blurRadius the blur radius of the wallpaper, 0 means no blur
+     * @return the key of cache
+     */
+    @NonNull
+    public static String createKey(@NonNull String source, int width, int height, @Nullable AlignMode alignMode,
+                                   @Nullable Integer maskColor, float blurRadius) {
+        return source + "|" + width + "x" + height
+                + "|" + (alignMode == null ? AlignMode.START : alignMode)
+                + "|" + (maskColor == null ? "none" : Integer.toHexString(maskColor))
+                + "|" + blurRadius;
+    }
+
+    /**
+     * Get the wallpaper from the memory cache, it is fast enough to call in the main thread
+     *
+     * @param key the key of wallpaper
+     * @return the cached wallpaper, null if not found
+     */
+    @Nullable
+    public Bitmap getFromMemory(@NonNull String key) {
+        Bitmap bitmap = mMemoryCache.get(key);
+        if (bitmap != null && bitmap.isRecycled()) {
+            mMemoryCache.remove(key);
+            return null;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Get the wallpaper from the memory cache, or decode it from the disk cache and keep it in memory.
+     * It may read the disk, call it in a background thread.
+     *
+     * @param key the key of wallpaper
+     * @return the cached wallpaper, null if not found
+     */
+    @Nullable
+    public Bitmap get(@NonNull String key) {
+        Bitmap bitmap = getFromMemory(key);
+        if (bitmap != null || mMaxDiskBytes <= 0) {
+            return bitmap;
+        }
+        File file = getFile(key);
+        synchronized (mDiskLock) {
+            if (!file.exists()) {
+                return null;
+            }
+            // touch the file so the disk tier is trimmed by the last access
+            file.setLastModified(System.currentTimeMillis());
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        bitmap = BitmapFactory.decodeFile(file.getPath(), options);
+        if (bitmap == null) {
+            Logger.e("can not decode cached wallpaper: " + file);
+            synchronized (mDiskLock) {
+                deleteFile(file);
+            }
+            return null;
+        }
+        bitmap.setDensity(Bitmap.DENSITY_NONE);
+        mMemoryCache.put(key, bitmap);
+        return bitmap;
+    }
+
+    /**
+     * Put a prepared wallpaper into the memory cache and write it to the disk cache.
+     * It writes the disk, call it in a background thread.
+     *
+     * @param key       the key of wallpaper
+     * @param wallpaper the prepared wallpaper, it is shared after put so it must not be modified
+     */
+    public void put(@NonNull String key, @NonNull Bitmap wallpaper) {
+        mMemoryCache.put(key, wallpaper);
+        if (mMaxDiskBytes <= 0) {
+            return;
+        }
+        File file = getFile(key);
+        synchronized (mDiskLock) {
+            if (file.exists()) {
+                return;
+            }
+            ensureDiskBytes();
+            File temp = new File(mDirectory, file.getName() + ".tmp");
+            OutputStream stream = null;
+            try {
+                stream = new FileOutputStream(temp);
+                // the opaque wallpaper is much smaller in jpeg
+                boolean written = wallpaper.hasAlpha()
+                        ? wallpaper.compress(Bitmap.CompressFormat.PNG, 100, stream)
+                        : wallpaper.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, stream);
+                stream.close();
+                stream = null;
+                if (written && temp.renameTo(file)) {
+                    mDiskBytes += file.length();
+                    trimDisk();
+                }
+            } catch (IOException e) {
+                Logger.e("can not write cached wallpaper: " + e.getMessage());
+            } finally {
+                if (stream != null) {
+                    try {
+                        stream.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+                if (temp.exists()) {
+                    temp.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Shrink the memory cache
+     *
+     * @param maxBytes the max bytes after trimmed, 0 to clear the memory cache
+     */
+    public void trimMemory(int maxBytes) {
+        mMemoryCache.trimToSize(maxBytes);
+    }
+
+    /**
+     * Clear the memory cache and the disk cache
+     */
+    public void clear() {
+        mMemoryCache.evictAll();
+        synchronized (mDiskLock) {
+            File[] files = mDirectory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            mDiskBytes = 0;
+        }
+    }
+
+    private File getFile(String key) {
+        return new File(mDirectory, hash(key));
+    }
+
+    private void ensureDiskBytes() {
+        if (mDiskBytes >= 0) {
+            return;
+        }
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            Logger.e("can not create cache directory: " + mDirectory);
+        }
+        mDiskBytes = 0;
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                mDiskBytes += file.length();
+            }
+        }
+    }
+
+    private void trimDisk() {
+        if (mDiskBytes <= mMaxDiskBytes) {
+            return;
+        }
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File o1, File o2) {
+                long t1 = o1.lastModified();
+                long t2 = o2.lastModified();
+                return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < files.length && mDiskBytes > mMaxDiskBytes; i++) {
+            deleteFile(files[i]);
+        }
+    }
+
+    private void deleteFile(File file) {
+        long length = file.length();
+        if (file.delete() && mDiskBytes >= 0) {
+            mDiskBytes -= length;
+        }
+    }
+
+    private static String hash(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] bytes = digest.digest(key.getBytes("UTF-8"));
+            StringBuilder builder = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                builder.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+            // never happen, every platform supports md5 and utf-8
+            return Integer.toHexString(key.hashCode());
+        }
+    }
+}
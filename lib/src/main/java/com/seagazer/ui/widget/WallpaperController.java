@@ -0,0 +1,455 @@
+package com.seagazer.ui.widget;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.DisplayMetrics;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.seagazer.ui.image.BlurEngines;
+import com.seagazer.ui.util.Logger;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The controller of a wallpaper host, shared by {@link WallpaperView} and {@link WallpaperHelper}.
+ * <p>
+ * It owns the {@link CrossFadeDrawable} of the host and schedules the wallpapers in latest-wins order:
+ * a new wallpaper drops the previous one which is still preparing or waiting for the transition delay,
+ * so a burst of changes only starts one transition. The decoding, blurring and baking run in one worker pool
+ * shared by all the controllers, and the result is displayed in the main thread.
+ * It also counts the requested, dropped and shown wallpapers, and the time from request to the first frame.
+ * All the methods must be called in the main thread.
+ */
+public class WallpaperController {
+    private static final int MAX_WORKERS = 2;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+    private static final int DEFAULT_TRANSITION_DELAY = 500;
+    private static final int DEFAULT_TRANSITION_DURATION = 500;
+    private static ThreadPoolExecutor sExecutor;
+    private final Context mContext;
+    private WeakReference<View> mHost;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final CrossFadeDrawable mDrawable;
+    private final Set<Bitmap> mReusableBitmaps = Collections.newSetFromMap(new WeakHashMap<Bitmap, Boolean>());
+    private int mTransitionDelay = DEFAULT_TRANSITION_DELAY;
+    private int mTransitionDuration = DEFAULT_TRANSITION_DURATION;
+    private AlignMode mAlignMode;
+    private boolean hasColorMask;
+    private int mMaskColor;
+    private float mBlurRadius;
+    private boolean isBakedMode;
+    private WallpaperCache mCache;
+    private boolean isActive = true;
+    private Request mLatest;
+    private Request mFirstFrameRequest;
+    // metrics
+    private int mRequestedCount;
+    private int mDroppedCount;
+    private int mShownCount;
+    private long mLastLatency;
+    private long mTotalLatency;
+    private int mLatencyCount;
+
+    /**
+     * A wallpaper waiting to display
+     */
+    private final class Request implements Runnable {
+        private final long mRequestTime = SystemClock.uptimeMillis();
+        private Future<?> mFuture;
+        private Drawable mWrapper;
+
+        @Override
+        public void run() {
+            // the transition delay is over
+            show(this);
+        }
+    }
+
+    /**
+     * @param context context
+     * @param host    the view to display the wallpaper, its size is the size to prepare the wallpaper, maybe null
+     */
+    public WallpaperController(@NonNull Context context, @Nullable View host) {
+        mContext = context.getApplicationContext();
+        mHost = new WeakReference<>(host);
+        mDrawable = new CrossFadeDrawable();
+        mDrawable.setOnEvictListener(new CrossFadeDrawable.OnEvictListener() {
+            @Override
+            public void onEvicted(@NonNull Drawable drawable) {
+                recycle(drawable);
+            }
+        });
+        mDrawable.setOnFirstFrameListener(new CrossFadeDrawable.OnFirstFrameListener() {
+            @Override
+            public void onFirstFrame(@NonNull Drawable drawable) {
+                Request request = mFirstFrameRequest;
+                if (request != null && request.mWrapper == drawable) {
+                    mFirstFrameRequest = null;
+                    mLastLatency = SystemClock.uptimeMillis() - request.mRequestTime;
+                    mTotalLatency += mLastLatency;
+                    mLatencyCount++;
+                }
+            }
+        });
+    }
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if (sExecutor == null) {
+            sExecutor = new ThreadPoolExecutor(MAX_WORKERS, MAX_WORKERS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(final Runnable r) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    }, "WallpaperController #" + mCount.incrementAndGet());
+                }
+            });
+            sExecutor.allowCoreThreadTimeOut(true);
+        }
+        return sExecutor;
+    }
+
+    /**
+     * Run a task in the worker pool of wallpapers
+     *
+     * @param task the task
+     * @return the future of task
+     */
+    static Future<?> execute(Runnable task) {
+        return getExecutor().submit(task);
+    }
+
+    /**
+     * Get the drawable to set as the background of host
+     *
+     * @return the cross-fade drawable
+     */
+    public CrossFadeDrawable getDrawable() {
+        return mDrawable;
+    }
+
+    /**
+     * Set the view to display the wallpaper, the wallpaper is prepared at the size of the screen if the host
+     * is not set or not laid out
+     *
+     * @param host the host view, maybe null
+     */
+    public void setHost(@Nullable View host) {
+        mHost = new WeakReference<>(host);
+    }
+
+    /**
+     * Display a drawable at once without the transition delay
+     *
+     * @param drawable the drawable
+     */
+    public void setDefaultWallpaper(@NonNull Drawable drawable) {
+        mDrawable.fadeChange(drawable, mTransitionDuration);
+    }
+
+    /**
+     * Set a new wallpaper, it is baked in a background thread if the baked mode is on and the host is laid out
+     *
+     * @param drawable the wallpaper
+     */
+    public void setWallpaper(@NonNull Drawable drawable) {
+        View host = mHost.get();
+        if (isBakedMode && host != null && host.getWidth() > 0 && host.getHeight() > 0) {
+            prepare(createJob(null, null, drawable));
+        } else {
+            RatioDrawableWrapper wrapper = new RatioDrawableWrapper(drawable, mAlignMode);
+            if (hasColorMask) {
+                wrapper.setColorMask(mMaskColor);
+            }
+            Request request = newRequest();
+            request.mWrapper = wrapper;
+            schedule(request);
+        }
+    }
+
+    /**
+     * Set a new wallpaper, it is blurred in a background thread if the blur radius is set
+     *
+     * @param bitmap the wallpaper
+     */
+    public void setWallpaper(@NonNull Bitmap bitmap) {
+        if (mBlurRadius > 0) {
+            prepare(createJob(null, bitmap, null));
+        } else {
+            setWallpaper(new BitmapDrawable(mContext.getResources(), bitmap));
+        }
+    }
+
+    /**
+     * Set a new wallpaper, it is decoded at the size of host in a background thread
+     *
+     * @param source the source of wallpaper
+     */
+    public void setWallpaper(@NonNull WallpaperDecoder.Source source) {
+        WallpaperJob job = createJob(source, null, null);
+        if (job.getCacheKey() != null) {
+            Bitmap cached = mCache.getFromMemory(job.getCacheKey());
+            if (cached != null) {
+                // display the prepared wallpaper without any background work
+                Request request = newRequest();
+                request.mWrapper = RatioDrawableWrapper.fromBaked(cached, mAlignMode);
+                schedule(request);
+                return;
+            }
+        }
+        prepare(job);
+    }
+
+    /**
+     * Drop the wallpaper which is preparing or waiting for the transition delay
+     */
+    public void cancel() {
+        if (mLatest != null) {
+            drop(mLatest);
+            mLatest = null;
+        }
+    }
+
+    /**
+     * Cancel the waiting wallpaper and stop the transition
+     */
+    public void release() {
+        cancel();
+        mDrawable.release();
+    }
+
+    /**
+     * Set the host is active, the wallpaper is dropped instead of displayed when the host is inactive
+     *
+     * @param active true if the host is active
+     */
+    public void setActive(boolean active) {
+        isActive = active;
+    }
+
+    public void setTransitionDelay(int delay) {
+        mTransitionDelay = delay;
+    }
+
+    public int getTransitionDelay() {
+        return mTransitionDelay;
+    }
+
+    public void setTransitionDuration(int duration) {
+        mTransitionDuration = duration;
+    }
+
+    public int getTransitionDuration() {
+        return mTransitionDuration;
+    }
+
+    public void setAlignMode(@Nullable AlignMode alignMode) {
+        mAlignMode = alignMode;
+    }
+
+    public void setColorMask(int color) {
+        hasColorMask = true;
+        mMaskColor = color;
+    }
+
+    public void setBlurRadius(float radius) {
+        mBlurRadius = radius;
+    }
+
+    public void setBakedMode(boolean baked) {
+        isBakedMode = baked;
+    }
+
+    public void setWallpaperCache(@Nullable WallpaperCache cache) {
+        mCache = cache;
+    }
+
+    /**
+     * @return the count of wallpapers requested
+     */
+    public int getRequestedCount() {
+        return mRequestedCount;
+    }
+
+    /**
+     * @return the count of wallpapers dropped by a newer one, cancel, inactive host or decoding failure
+     */
+    public int getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    /**
+     * @return the count of wallpapers started the transition
+     */
+    public int getShownCount() {
+        return mShownCount;
+    }
+
+    /**
+     * @return the time in milliseconds from the request to the first frame of the last shown wallpaper
+     */
+    public long getLastLatency() {
+        return mLastLatency;
+    }
+
+    /**
+     * @return the average time in milliseconds from the request to the first frame of the shown wallpapers
+     */
+    public long getAverageLatency() {
+        return mLatencyCount == 0 ? 0 : mTotalLatency / mLatencyCount;
+    }
+
+    /**
+     * Reset all the counters
+     */
+    public void resetMetrics() {
+        mRequestedCount = 0;
+        mDroppedCount = 0;
+        mShownCount = 0;
+        mLastLatency = 0;
+        mTotalLatency = 0;
+        mLatencyCount = 0;
+    }
+
+    /**
+     * Create a job to prepare the wallpaper into the cache with current settings
+     *
+     * @param source the source of wallpaper
+     * @return the job, null if no cache is set or the source has no key
+     */
+    @Nullable
+    WallpaperJob createPrefetchJob(@NonNull WallpaperDecoder.Source source) {
+        WallpaperJob job = createJob(source, null, null);
+        return job.getCacheKey() != null ? job : null;
+    }
+
+    private WallpaperJob createJob(@Nullable WallpaperDecoder.Source source, @Nullable Bitmap bitmap,
+                                   @Nullable Drawable drawable) {
+        View host = mHost.get();
+        DisplayMetrics metrics = mContext.getResources().getDisplayMetrics();
+        // the host may not be laid out yet, the screen is the largest size a wallpaper can fill
+        int width = host != null && host.getWidth() > 0 ? host.getWidth() : metrics.widthPixels;
+        int height = host != null && host.getHeight() > 0 ? host.getHeight() : metrics.heightPixels;
+        return new WallpaperJob(mContext.getResources(), source, bitmap, drawable, width, height, mBlurRadius,
+                mAlignMode, hasColorMask ? mMaskColor : null, isBakedMode, mCache);
+    }
+
+    private Request newRequest() {
+        mRequestedCount++;
+        if (mLatest != null) {
+            // latest wins
+            drop(mLatest);
+        }
+        Request request = new Request();
+        mLatest = request;
+        return request;
+    }
+
+    private void prepare(final WallpaperJob job) {
+        final Request request = newRequest();
+        request.mFuture = execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean prepared;
+                try {
+                    prepared = job.run(BlurEngines.best(mContext));
+                } catch (RuntimeException e) {
+                    Logger.e("prepare wallpaper failed: " + e.getMessage());
+                    prepared = false;
+                }
+                final boolean success = prepared;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mLatest != request) {
+                            // dropped while preparing, the bitmap is never displayed
+                            if (success && job.getReusableBitmap() != null) {
+                                WallpaperDecoder.getDefault().recycle(job.getReusableBitmap());
+                            }
+                            return;
+                        }
+                        if (!success) {
+                            drop(request);
+                            mLatest = null;
+                            return;
+                        }
+                        Bitmap reusable = job.getReusableBitmap();
+                        if (reusable != null) {
+                            mReusableBitmaps.add(reusable);
+                        }
+                        request.mWrapper = job.getWrapper();
+                        schedule(request);
+                    }
+                });
+            }
+        });
+    }
+
+    private void schedule(Request request) {
+        // the preparing time is a part of the transition delay
+        long elapsed = SystemClock.uptimeMillis() - request.mRequestTime;
+        mMainHandler.postDelayed(request, Math.max(0, mTransitionDelay - elapsed));
+    }
+
+    private void show(Request request) {
+        if (mLatest != request) {
+            return;
+        }
+        mLatest = null;
+        if (!isActive) {
+            mDroppedCount++;
+            return;
+        }
+        mShownCount++;
+        mFirstFrameRequest = request;
+        // the mask of a wrapper which is not baked is drawn over the content, fade them together in a layer
+        mDrawable.setLayerFadeEnabled(hasColorMask && !(request.mWrapper instanceof RatioDrawableWrapper
+                && ((RatioDrawableWrapper) request.mWrapper).isBaked()));
+        mDrawable.fadeChange(request.mWrapper, mTransitionDuration);
+    }
+
+    private void drop(Request request) {
+        mDroppedCount++;
+        mMainHandler.removeCallbacks(request);
+        if (request.mFuture != null) {
+            request.mFuture.cancel(false);
+        }
+    }
+
+    private void recycle(Drawable drawable) {
+        if (drawable instanceof RatioDrawableWrapper) {
+            drawable = ((RatioDrawableWrapper) drawable).getDrawable();
+        }
+        if (drawable instanceof BitmapDrawable) {
+            Bitmap bitmap = ((BitmapDrawable) drawable).getBitmap();
+            // only the bitmaps created by this controller can be reused, others may still be held by the caller
+            if (bitmap != null && mReusableBitmaps.remove(bitmap)) {
+                WallpaperDecoder.getDefault().recycle(bitmap);
+            }
+        }
+    }
+}
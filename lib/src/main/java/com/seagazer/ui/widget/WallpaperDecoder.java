@@ -0,0 +1,289 @@
+package com.seagazer.ui.widget;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.seagazer.ui.util.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A decoder to load a wallpaper at the size of the view which displays it.
+ * <p>
+ * The image is sampled by {@link BitmapFactory.Options#inSampleSize} and scaled by density while decoding,
+ * so the decoded bitmap just covers the target size instead of keeping the full resolution of the source.
+ * Call {@link #recycle(Bitmap)} with a wallpaper that is no longer displayed, the next decode will reuse
+ * its memory by {@link BitmapFactory.Options#inBitmap}.
+ * The decoding is blocking, call it in a background thread.
+ */
+public class WallpaperDecoder {
+    private static final int MAX_REUSABLE_COUNT = 2;
+    private static WallpaperDecoder sDefault;
+    private final List<Bitmap> mReusable = new ArrayList<>();
+
+    /**
+     * The source of a compressed image
+     */
+    public interface Source {
+        /**
+         * Open a new stream of the image, it may be called more than once for one decoding
+         *
+         * @return the stream of the compressed image, it will be closed after read
+         * @throws IOException if the image can not be read
+         */
+        @NonNull
+        InputStream open() throws IOException;
+
+        /**
+         * Get the key to identify the image in {@link WallpaperCache}
+         *
+         * @return the key of image, null if the image can not be identified
+         */
+        @Nullable
+        String getKey();
+    }
+
+    /**
+     * Get the decoder shared in this process
+     *
+     * @return the default decoder
+     */
+    public static synchronized WallpaperDecoder getDefault() {
+        if (sDefault == null) {
+            sDefault = new WallpaperDecoder();
+        }
+        return sDefault;
+    }
+
+    /**
+     * Create a source of a content uri
+     *
+     * @param context context to resolve the uri
+     * @param uri     the uri of the image
+     * @return the source
+     */
+    public static Source from(@NonNull Context context, @NonNull final Uri uri) {
+        final Context appContext = context.getApplicationContext();
+        return new Source() {
+            @NonNull
+            @Override
+            public InputStream open() throws IOException {
+                InputStream stream = appContext.getContentResolver().openInputStream(uri);
+                if (stream == null) {
+                    throw new IOException("Can not open " + uri);
+                }
+                return stream;
+            }
+
+            @Override
+            public String getKey() {
+                return uri.toString();
+            }
+        };
+    }
+
+    /**
+     * Create a source of a file
+     *
+     * @param file the image file
+     * @return the source
+     */
+    public static Source from(@NonNull final File file) {
+        return new Source() {
+            @NonNull
+            @Override
+            public InputStream open() throws IOException {
+                return new FileInputStream(file);
+            }
+
+            @Override
+            public String getKey() {
+                // a changed file is a new image
+                return file.getAbsolutePath() + ":" + file.lastModified() + ":" + file.length();
+            }
+        };
+    }
+
+    /**
+     * Create a source of a stream, the stream is read once when decoding and closed after read
+     *
+     * @param stream the stream of the image
+     * @return the source
+     */
+    public static Source from(@NonNull InputStream stream) {
+        return from(stream, null);
+    }
+
+    /**
+     * Create a source of a stream, the stream is read once when decoding and closed after read
+     *
+     * @param stream the stream of the image
+     * @param key    the key to identify the image in {@link WallpaperCache}, null if it can not be identified
+     * @return the source
+     */
+    public static Source from(@NonNull final InputStream stream, @Nullable final String key) {
+        return new Source() {
+            private byte[] mData;
+
+            @NonNull
+            @Override
+            public InputStream open() throws IOException {
+                if (mData == null) {
+                    // the stream can not be read twice, keep the compressed data for the bounds and the pixels pass
+                    try {
+                        ByteArrayOutputStream output = new ByteArrayOutputStream();
+                        byte[] buffer = new byte[16 * 1024];
+                        int count;
+                        while ((count = stream.read(buffer)) != -1) {
+                            output.write(buffer, 0, count);
+                        }
+                        mData = output.toByteArray();
+                    } finally {
+                        stream.close();
+                    }
+                }
+                return new ByteArrayInputStream(mData);
+            }
+
+            @Override
+            public String getKey() {
+                return key;
+            }
+        };
+    }
+
+    /**
+     * Decode the image to cover the target size, keep the ratio of width : height
+     *
+     * @param source       the source of image
+     * @param targetWidth  the width to cover, 0 means not limit
+     * @param targetHeight the height to cover, 0 means not limit
+     * @return the decoded mutable bitmap, it is smaller than the source if the source is larger than the target
+     * @throws IOException if the image can not be read or decoded
+     */
+    @NonNull
+    public Bitmap decode(@NonNull Source source, int targetWidth, int targetHeight) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decodeStream(source, options);
+        int width = options.outWidth;
+        int height = options.outHeight;
+        if (width <= 0 || height <= 0) {
+            throw new IOException("Can not decode the bounds of the wallpaper");
+        }
+        options.inJustDecodeBounds = false;
+        options.inMutable = true;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inSampleSize = computeSampleSize(width, height, targetWidth, targetHeight);
+        int sampledWidth = width / options.inSampleSize;
+        int sampledHeight = height / options.inSampleSize;
+        // scale the rest by density, the larger ratio keeps both sides to cover the target
+        float ratioW = targetWidth > 0 ? (float) targetWidth / sampledWidth : 0;
+        float ratioH = targetHeight > 0 ? (float) targetHeight / sampledHeight : 0;
+        int outWidth = sampledWidth;
+        int outHeight = sampledHeight;
+        if ((ratioW > 0 || ratioH > 0) && Math.max(ratioW, ratioH) < 1) {
+            options.inScaled = true;
+            if (ratioW >= ratioH) {
+                options.inDensity = sampledWidth;
+                options.inTargetDensity = targetWidth;
+            } else {
+                options.inDensity = sampledHeight;
+                options.inTargetDensity = targetHeight;
+            }
+            float scale = (float) options.inTargetDensity / options.inDensity;
+            outWidth = (int) (sampledWidth * scale + 0.5f);
+            outHeight = (int) (sampledHeight * scale + 0.5f);
+        }
+        options.inBitmap = obtainReusable(outWidth * outHeight * 4);
+        Bitmap bitmap;
+        try {
+            bitmap = decodeStream(source, options);
+        } catch (IllegalArgumentException e) {
+            // the reusable bitmap does not fit this image, decode to a new bitmap
+            Logger.e("can not reuse bitmap: " + e.getMessage());
+            options.inBitmap = null;
+            bitmap = decodeStream(source, options);
+        }
+        if (bitmap == null) {
+            throw new IOException("Can not decode the wallpaper");
+        }
+        // the density is only used to scale, draw it pixel by pixel
+        bitmap.setDensity(Bitmap.DENSITY_NONE);
+        return bitmap;
+    }
+
+    /**
+     * Offer a wallpaper which is no longer displayed, its memory will be reused by the next decoding.
+     * The bitmap must not be used by the caller any more.
+     *
+     * @param bitmap the bitmap to reuse, immutable bitmap is ignored
+     */
+    public synchronized void recycle(@NonNull Bitmap bitmap) {
+        if (bitmap.isRecycled() || !bitmap.isMutable() || mReusable.contains(bitmap)) {
+            return;
+        }
+        if (mReusable.size() >= MAX_REUSABLE_COUNT) {
+            mReusable.remove(0).recycle();
+        }
+        mReusable.add(bitmap);
+    }
+
+    /**
+     * Release all the bitmaps kept for reuse
+     */
+    public synchronized void clear() {
+        for (Bitmap bitmap : mReusable) {
+            bitmap.recycle();
+        }
+        mReusable.clear();
+    }
+
+    @Nullable
+    private synchronized Bitmap obtainReusable(int byteCount) {
+        Bitmap best = null;
+        for (Bitmap bitmap : mReusable) {
+            // use the smallest one which is large enough
+            if (bitmap.getAllocationByteCount() >= byteCount
+                    && (best == null || bitmap.getAllocationByteCount() < best.getAllocationByteCount())) {
+                best = bitmap;
+            }
+        }
+        if (best != null) {
+            mReusable.remove(best);
+        }
+        return best;
+    }
+
+    private static int computeSampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int sampleSize = 1;
+        if (targetWidth <= 0 && targetHeight <= 0) {
+            return sampleSize;
+        }
+        while (width / (sampleSize * 2) >= targetWidth && height / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static Bitmap decodeStream(Source source, BitmapFactory.Options options) throws IOException {
+        InputStream stream = source.open();
+        try {
+            return BitmapFactory.decodeStream(stream, null, options);
+        } finally {
+            stream.close();
+        }
+    }
+}
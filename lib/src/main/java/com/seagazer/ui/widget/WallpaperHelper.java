@@ -1,11 +1,9 @@
 package com.seagazer.ui.widget;
 
-import android.annotation.SuppressLint;
+import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
-import android.os.Handler;
-import android.os.Message;
+import android.net.Uri;
 import android.util.Log;
 import android.view.View;
 
@@ -17,6 +15,8 @@ import androidx.lifecycle.Lifecycle;
 import androidx.lifecycle.LifecycleObserver;
 import androidx.lifecycle.OnLifecycleEvent;
 
+import java.io.File;
+import java.io.InputStream;
 import java.lang.ref.WeakReference;
 
 /**
@@ -29,12 +29,17 @@ import java.lang.ref.WeakReference;
  * Call {@link #setColorMask(int)} to set a color mask layer overlay the wallpaper.
  * Call {@link #setWallpaper(int)} or {@link #setWallpaper(Bitmap)} or {@link #setWallpaper(Drawable)}
  * to change a wallpaper.
+ * Call {@link #setWallpaper(Uri)} or {@link #setWallpaper(File)} or {@link #setWallpaper(InputStream)}
+ * to decode a wallpaper at the size of the host in a background thread.
  * Call {@link #setAlignMode(AlignMode)} to set the display mode if the drawable
  * can not fill the vision.
+ * Call {@link #setBlurRadius(float)} to blur the bitmap wallpaper before display.
+ * Call {@link #setBakedMode(boolean)} to render the clipped and masked wallpaper into a bitmap before display.
+ * Call {@link #setWallpaperCache(WallpaperCache)} to reuse the prepared wallpapers in memory and on disk.
+ * Call {@link #getController()} to get the metrics of transitions after attached.
  */
 public class WallpaperHelper implements LifecycleObserver {
-    private static final int MSG_REFRESH_IMAGE = 0x0001;
-    private CrossFadeDrawable mDrawable;
+    private WallpaperController mController;
     private WeakReference<ComponentActivity> mActivityHost;
     private WeakReference<View> mViewHost;
     private boolean isActivityActivated = false;
@@ -43,9 +48,10 @@ public class WallpaperHelper implements LifecycleObserver {
     private int mCrossFadeDuration = 500;
     private boolean hasColorMask;
     private int mOverlayMaskColor;
-    private Handler mHandler;
     private AlignMode mAlignMode = null;
-    private boolean isCancel;
+    private float mBlurRadius;
+    private boolean isBakedMode;
+    private WallpaperCache mWallpaperCache;
 
     /**
      * Default construct, then you should call {@link #attach(ComponentActivity, Drawable)} or {@link #attach(View, Drawable)} to attach a host.
@@ -83,14 +89,13 @@ public class WallpaperHelper implements LifecycleObserver {
         isActivityActivated = true;
         mActivityHost = new WeakReference<>(activity);
         activity.getLifecycle().addObserver(this);
-        mDrawable = new CrossFadeDrawable();
+        // the decor view may not be installed yet, it is set as the host when resumed
+        mController = createController(activity, activity.getWindow().peekDecorView());
         // prepare the default drawable
-        activity.getWindow().setBackgroundDrawable(mDrawable);
+        activity.getWindow().setBackgroundDrawable(mController.getDrawable());
         if (defaultWallpaper != null) {
-            mDrawable.fadeChange(defaultWallpaper, mCrossFadeDuration);
+            mController.setDefaultWallpaper(defaultWallpaper);
         }
-        // prepare a handler to handle the message of drawable changed
-        prepareHandler();
     }
 
     /**
@@ -105,68 +110,74 @@ public class WallpaperHelper implements LifecycleObserver {
         }
         isViewActivated = true;
         mViewHost = new WeakReference<>(view);
-        mDrawable = new CrossFadeDrawable();
+        mController = createController(view.getContext(), view);
         // prepare the default drawable
-        view.setBackground(mDrawable);
+        view.setBackground(mController.getDrawable());
         if (defaultWallpaper != null) {
-            mDrawable.fadeChange(defaultWallpaper, mCrossFadeDuration);
+            mController.setDefaultWallpaper(defaultWallpaper);
         }
-        // prepare a handler to handle the message of drawable changed
-        prepareHandler();
         view.addOnAttachStateChangeListener(new View.OnAttachStateChangeListener() {
             @Override
             public void onViewAttachedToWindow(View v) {
                 isViewActivated = true;
+                mController.setActive(true);
             }
 
             @Override
             public void onViewDetachedFromWindow(View v) {
                 isViewActivated = false;
-                release();
+                mController.setActive(false);
+                mController.release();
             }
         });
     }
 
-    private void release() {
-        if (mHandler != null) {
-            mHandler.removeCallbacksAndMessages(null);
-        }
-        if (mDrawable != null) {
-            mDrawable.release();
+    private WallpaperController createController(Context context, @Nullable View host) {
+        WallpaperController controller = new WallpaperController(context, host);
+        controller.setTransitionDelay(mCrossFadeDelay);
+        controller.setTransitionDuration(mCrossFadeDuration);
+        if (hasColorMask) {
+            controller.setColorMask(mOverlayMaskColor);
         }
+        controller.setAlignMode(mAlignMode);
+        controller.setBlurRadius(mBlurRadius);
+        controller.setBakedMode(isBakedMode);
+        controller.setWallpaperCache(mWallpaperCache);
+        return controller;
     }
 
-    @SuppressLint("HandlerLeak")
-    private void prepareHandler() {
-        mHandler = new Handler() {
-            @Override
-            public void handleMessage(Message msg) {
-                if (msg.what == MSG_REFRESH_IMAGE) {
-                    if (isCancel) {
-                        return;
-                    }
-                    Drawable newDrawable = (Drawable) msg.obj;
-                    if (isActivityActivated() || isViewActivated()) {
-                        mDrawable.fadeChange(newDrawable, mCrossFadeDuration);
-                    }
-                }
-            }
-        };
+    /**
+     * Get the controller which schedules the wallpapers of the host and counts the transitions
+     *
+     * @return the controller, null if no host is attached
+     */
+    @Nullable
+    public WallpaperController getController() {
+        return mController;
     }
 
     @OnLifecycleEvent(Lifecycle.Event.ON_RESUME)
     private void onResume() {
         isActivityActivated = true;
+        if (mController != null) {
+            mController.setActive(true);
+            mController.setHost(mActivityHost.get() != null ? mActivityHost.get().getWindow().getDecorView() : null);
+        }
     }
 
     @OnLifecycleEvent(Lifecycle.Event.ON_STOP)
     private void onStop() {
         isActivityActivated = false;
+        if (mController != null) {
+            mController.setActive(false);
+        }
     }
 
     @OnLifecycleEvent(Lifecycle.Event.ON_DESTROY)
     private void onDestroy() {
-        release();
+        if (mController != null) {
+            mController.release();
+        }
         if (mActivityHost != null && mActivityHost.get() != null) {
             mActivityHost.get().getLifecycle().removeObserver(this);
             mActivityHost.clear();
@@ -180,12 +191,9 @@ public class WallpaperHelper implements LifecycleObserver {
      */
     public void setWallpaper(@DrawableRes int resource) {
         checkActivated();
-        if (isActivityActivated()) {
-            Drawable drawable = mActivityHost.get().getResources().getDrawable(resource);
-            setWallpaper(drawable);
-        } else if (isViewActivated()) {
-            Drawable drawable = mViewHost.get().getResources().getDrawable(resource);
-            setWallpaper(drawable);
+        Context context = getHostContext();
+        if (context != null) {
+            setWallpaper(context.getResources().getDrawable(resource));
         }
     }
 
@@ -196,12 +204,8 @@ public class WallpaperHelper implements LifecycleObserver {
      */
     public void setWallpaper(@NonNull Bitmap bitmap) {
         checkActivated();
-        if (isActivityActivated()) {
-            BitmapDrawable drawable = new BitmapDrawable(mActivityHost.get().getResources(), bitmap);
-            setWallpaper(drawable);
-        } else if (isViewActivated()) {
-            BitmapDrawable drawable = new BitmapDrawable(mViewHost.get().getResources(), bitmap);
-            setWallpaper(drawable);
+        if (isActivityActivated() || isViewActivated()) {
+            mController.setWallpaper(bitmap);
         }
     }
 
@@ -212,23 +216,89 @@ public class WallpaperHelper implements LifecycleObserver {
      */
     public void setWallpaper(@NonNull Drawable drawable) {
         checkActivated();
-        isCancel = false;
-        mHandler.removeMessages(MSG_REFRESH_IMAGE);
         if (isActivityActivated() || isViewActivated()) {
-            RatioDrawableWrapper drawableWrapper = new RatioDrawableWrapper(drawable, mAlignMode);
-            if (hasColorMask) {
-                drawableWrapper.setColorMask(mOverlayMaskColor);
-            }
-            mHandler.sendMessageDelayed(mHandler.obtainMessage(MSG_REFRESH_IMAGE, drawableWrapper), mCrossFadeDelay);
+            mController.setWallpaper(drawable);
         }
     }
 
+    /**
+     * Set a new wallPaper to change, the image is decoded at the size of the host in a background thread
+     *
+     * @param uri the content uri of wallPaper
+     */
+    public void setWallpaper(@NonNull Uri uri) {
+        checkActivated();
+        Context context = getHostContext();
+        if (context != null) {
+            mController.setWallpaper(WallpaperDecoder.from(context, uri));
+        }
+    }
+
+    /**
+     * Set a new wallPaper to change, the image is decoded at the size of the host in a background thread
+     *
+     * @param file the image file of wallPaper
+     */
+    public void setWallpaper(@NonNull File file) {
+        checkActivated();
+        if (isActivityActivated() || isViewActivated()) {
+            mController.setWallpaper(WallpaperDecoder.from(file));
+        }
+    }
+
+    /**
+     * Set a new wallPaper to change, the image is decoded at the size of the host in a background thread
+     *
+     * @param stream the stream of wallPaper, it will be closed after read
+     */
+    public void setWallpaper(@NonNull InputStream stream) {
+        setWallpaper(stream, null);
+    }
+
+    /**
+     * Set a new wallPaper to change, the image is decoded at the size of the host in a background thread
+     *
+     * @param stream the stream of wallPaper, it will be closed after read
+     * @param key    the key to identify the image in {@link WallpaperCache}, null if it can not be identified
+     */
+    public void setWallpaper(@NonNull InputStream stream, @Nullable String key) {
+        checkActivated();
+        if (isActivityActivated() || isViewActivated()) {
+            mController.setWallpaper(WallpaperDecoder.from(stream, key));
+        }
+    }
+
+    /**
+     * Create a job to prepare the wallpaper into the cache with current settings
+     *
+     * @param source the source of wallpaper
+     * @return the job, null if no host is activated, no cache is set or the source has no key
+     */
+    @Nullable
+    WallpaperJob createPrefetchJob(@NonNull WallpaperDecoder.Source source) {
+        if (!(isActivityActivated() || isViewActivated())) {
+            return null;
+        }
+        return mController.createPrefetchJob(source);
+    }
+
+    @Nullable
+    private Context getHostContext() {
+        if (isActivityActivated()) {
+            return mActivityHost.get();
+        } else if (isViewActivated()) {
+            return mViewHost.get().getContext();
+        }
+        return null;
+    }
+
     /**
      * Cancel the prepare wallPaper to set
      */
     public void cancel() {
-        isCancel = true;
-        mHandler.removeMessages(MSG_REFRESH_IMAGE);
+        if (mController != null) {
+            mController.cancel();
+        }
     }
 
     /**
@@ -239,6 +309,50 @@ public class WallpaperHelper implements LifecycleObserver {
     public void setColorMask(int color) {
         hasColorMask = true;
         mOverlayMaskColor = color;
+        if (mController != null) {
+            mController.setColorMask(color);
+        }
+    }
+
+    /**
+     * Set the blur radius of the wallpaper, the bitmap will be downsampled and blurred
+     * by the fastest blur engine of this device in a background thread before display
+     *
+     * @param radius the blur radius in pixels of the wallpaper, 0 means no blur
+     */
+    public void setBlurRadius(float radius) {
+        mBlurRadius = radius;
+        if (mController != null) {
+            mController.setBlurRadius(radius);
+        }
+    }
+
+    /**
+     * Set the baked mode, the wallpaper will be clipped and masked into a bitmap of the host size
+     * in a background thread before display, so the crossFade only draws the bitmap in every frame.
+     * The drawable wallpaper is drawn in a background thread in this mode, do not change it after set.
+     *
+     * @param baked true to bake the wallpaper before display, default is false
+     */
+    public void setBakedMode(boolean baked) {
+        isBakedMode = baked;
+        if (mController != null) {
+            mController.setBakedMode(baked);
+        }
+    }
+
+    /**
+     * Set a cache of the prepared wallpapers, the wallpaper set by uri, file or stream with a key is read from
+     * the cache if it is prepared with the same host size, align mode, color mask and blur radius before.
+     * The cached wallpaper is always baked, see {@link #setBakedMode(boolean)}.
+     *
+     * @param cache the cache, such as {@link WallpaperCache#getDefault(Context)}, null means no cache
+     */
+    public void setWallpaperCache(@Nullable WallpaperCache cache) {
+        mWallpaperCache = cache;
+        if (mController != null) {
+            mController.setWallpaperCache(cache);
+        }
     }
 
     /**
@@ -251,6 +365,9 @@ public class WallpaperHelper implements LifecycleObserver {
             Log.w(this.getClass().getSimpleName(), "[WARNING]: You should set the crossFadeDelay more than crossFadeDuration better!");
         }
         mCrossFadeDelay = delay;
+        if (mController != null) {
+            mController.setTransitionDelay(delay);
+        }
     }
 
     /**
@@ -263,6 +380,9 @@ public class WallpaperHelper implements LifecycleObserver {
             Log.w(this.getClass().getSimpleName(), "[WARNING]: You should set the crossFadeDelay more than crossFadeDuration better!");
         }
         mCrossFadeDuration = duration;
+        if (mController != null) {
+            mController.setTransitionDuration(duration);
+        }
     }
 
     /**
@@ -273,6 +393,9 @@ public class WallpaperHelper implements LifecycleObserver {
      */
     public void setAlignMode(AlignMode alignMode) {
         mAlignMode = alignMode;
+        if (mController != null) {
+            mController.setAlignMode(alignMode);
+        }
     }
 
     /**
@@ -0,0 +1,181 @@
+package com.seagazer.ui.widget;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.seagazer.ui.image.BlurEngine;
+import com.seagazer.ui.image.BlurPipeline;
+import com.seagazer.ui.util.Logger;
+
+import java.io.IOException;
+
+/**
+ * The background job of {@link WallpaperController} to prepare a wallpaper:
+ * decode the source at the display size, blur it and bake the clipped wallpaper with the color mask.
+ * If a {@link WallpaperCache} is set and the source has a key, the baked wallpaper is read from and put into the cache.
+ * After run, the wrapper to display is {@link #getWrapper()}, and the bitmap held by it can be reused
+ * after evicted if {@link #getReusableBitmap()} is not null.
+ */
+class WallpaperJob {
+    private final Resources mResources;
+    private final WallpaperDecoder.Source mSource;
+    private final Bitmap mBitmap;
+    private final Drawable mDrawable;
+    private final int mWidth, mHeight;
+    private final float mBlurRadius;
+    private final AlignMode mAlignMode;
+    private final boolean hasColorMask;
+    private final int mMaskColor;
+    private final boolean isBaked;
+    private final WallpaperCache mCache;
+    private final String mCacheKey;
+    private volatile RatioDrawableWrapper mWrapper;
+    private volatile Bitmap mReusableBitmap;
+
+    /**
+     * @param resources   resources to create the drawable of bitmap
+     * @param source      the source to decode, or null
+     * @param bitmap      the bitmap to blur, or null
+     * @param drawable    the drawable to bake, or null
+     * @param width       the width of display
+     * @param height      the height of display
+     * @param blurRadius  the blur radius of the decoded or the set bitmap, 0 means no blur
+     * @param alignMode   the mode to clip the wallpaper
+     * @param maskColor   the color of mask, null means no mask
+     * @param baked       true to bake the wallpaper into a bitmap of the display size
+     * @param cache       the cache of baked wallpapers, null means no cache
+     */
+    WallpaperJob(Resources resources, @Nullable WallpaperDecoder.Source source, @Nullable Bitmap bitmap,
+                 @Nullable Drawable drawable, int width, int height, float blurRadius, @Nullable AlignMode alignMode,
+                 @Nullable Integer maskColor, boolean baked, @Nullable WallpaperCache cache) {
+        this.mResources = resources;
+        this.mSource = source;
+        this.mBitmap = bitmap;
+        this.mDrawable = drawable;
+        this.mWidth = width;
+        this.mHeight = height;
+        this.mBlurRadius = blurRadius;
+        this.mAlignMode = alignMode;
+        this.hasColorMask = maskColor != null;
+        this.mMaskColor = maskColor == null ? 0 : maskColor;
+        String sourceKey = source == null ? null : source.getKey();
+        if (cache != null && sourceKey != null) {
+            this.mCache = cache;
+            this.mCacheKey = WallpaperCache.createKey(sourceKey, width, height, alignMode, maskColor, blurRadius);
+            // only the baked wallpaper is cached
+            this.isBaked = true;
+        } else {
+            this.mCache = null;
+            this.mCacheKey = null;
+            this.isBaked = baked;
+        }
+    }
+
+    /**
+     * Get the key of the prepared wallpaper in cache
+     *
+     * @return the key in cache, null if it is not cached
+     */
+    @Nullable
+    String getCacheKey() {
+        return mCacheKey;
+    }
+
+    /**
+     * Prepare the wallpaper, call it in a background thread
+     *
+     * @param engine the blur engine
+     * @return true if the wallpaper is prepared, false if the source can not be decoded
+     */
+    boolean run(@NonNull BlurEngine engine) {
+        if (mCacheKey != null) {
+            Bitmap cached = mCache.get(mCacheKey);
+            if (cached != null) {
+                mWrapper = RatioDrawableWrapper.fromBaked(cached, mAlignMode);
+                return true;
+            }
+        }
+        WallpaperDecoder decoder = WallpaperDecoder.getDefault();
+        Drawable content = mDrawable;
+        // the bitmap created by this job, the set bitmap belongs to the caller
+        Bitmap owned = null;
+        Bitmap bitmap = mBitmap;
+        if (mSource != null) {
+            try {
+                owned = decoder.decode(mSource, mWidth, mHeight);
+            } catch (IOException e) {
+                Logger.e("decode wallpaper failed: " + e.getMessage());
+                return false;
+            }
+            bitmap = owned;
+        }
+        if (bitmap != null) {
+            if (mBlurRadius > 0) {
+                Bitmap blurred = BlurPipeline.blur(engine, bitmap, BlurPipeline.plan(mBlurRadius));
+                if (!bitmap.hasAlpha()) {
+                    // blurring an opaque image keeps it opaque
+                    blurred.setHasAlpha(false);
+                }
+                if (owned != null) {
+                    decoder.recycle(owned);
+                }
+                owned = blurred;
+                bitmap = blurred;
+            }
+            content = new BitmapDrawable(mResources, bitmap);
+        }
+        RatioDrawableWrapper wrapper = new RatioDrawableWrapper(content, mAlignMode);
+        if (hasColorMask) {
+            wrapper.setColorMask(mMaskColor);
+        }
+        if (isBaked) {
+            wrapper.bake(mWidth, mHeight);
+            // the baked bitmap replaces the decoded one
+            if (owned != null) {
+                decoder.recycle(owned);
+            }
+            owned = wrapper.getBakedBitmap();
+        }
+        if (mCacheKey != null) {
+            // the cached wallpaper is shared, it can not be reused any more
+            mCache.put(mCacheKey, owned);
+            owned = null;
+        }
+        mReusableBitmap = owned;
+        mWrapper = wrapper;
+        return true;
+    }
+
+    /**
+     * Get the prepared wallpaper, it is valid after the job returns true
+     *
+     * @return the wrapper to display
+     */
+    RatioDrawableWrapper getWrapper() {
+        return mWrapper;
+    }
+
+    /**
+     * Get the bitmap created by this job and held by the wrapper, it can be reused after the wallpaper is evicted
+     *
+     * @return the bitmap, null if the wrapper holds a bitmap shared by the cache or the caller
+     */
+    @Nullable
+    Bitmap getReusableBitmap() {
+        return mReusableBitmap;
+    }
+
+    /**
+     * Check the prepared wallpaper is in the memory cache already
+     *
+     * @return true if it is cached in memory
+     */
+    boolean isCached() {
+        return mCacheKey != null && mCache.getFromMemory(mCacheKey) != null;
+    }
+}
@@ -0,0 +1,208 @@
+package com.seagazer.ui.widget;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.seagazer.ui.image.BlurEngines;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Prefetch the wallpapers of the items around the focus into the {@link WallpaperCache} of a
+ * {@link WallpaperView} or a {@link WallpaperHelper}, so the wallpaper of the next focused item is ready
+ * before the transition delay ends.
+ * <p>
+ * Set it to {@link GridAdapter#setOnItemPrefetchListener(int, GridAdapter.OnItemPrefetchListener)}.
+ * The wallpapers are prepared in the order of the distance to the focus, at most {@link #setMaxInFlight(int)}
+ * at the same time. When the focus moves, the queued wallpapers which are no longer around the focus are canceled.
+ * The host must set a cache by {@code setWallpaperCache}, and the source must have a key, or nothing is prefetched.
+ */
+public class WallpaperPrefetcher implements GridAdapter.OnItemPrefetchListener {
+    private static final int DEFAULT_MAX_IN_FLIGHT = 1;
+    private final Context mContext;
+    private final JobFactory mJobFactory;
+    private final SourceProvider mSourceProvider;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Map<String, PrefetchTask> mInFlight = new HashMap<>();
+    private final Set<PrefetchTask> mCanceling = new HashSet<>();
+    private final LinkedHashMap<String, WallpaperJob> mPending = new LinkedHashMap<>();
+    private int mMaxInFlight = DEFAULT_MAX_IN_FLIGHT;
+
+    /**
+     * Provide the wallpaper source of an item
+     */
+    public interface SourceProvider {
+        /**
+         * Get the wallpaper source of the item
+         *
+         * @param item the data of item in grid
+         * @return the source of wallpaper, null if the item has no wallpaper
+         */
+        @Nullable
+        WallpaperDecoder.Source getSource(@NonNull Object item);
+    }
+
+    private interface JobFactory {
+        WallpaperJob create(WallpaperDecoder.Source source);
+    }
+
+    /**
+     * @param view     the wallpaper view to prefetch for
+     * @param provider provide the wallpaper source of item
+     */
+    public WallpaperPrefetcher(@NonNull final WallpaperView view, @NonNull SourceProvider provider) {
+        this(view.getContext(), new JobFactory() {
+            @Override
+            public WallpaperJob create(WallpaperDecoder.Source source) {
+                return view.createPrefetchJob(source);
+            }
+        }, provider);
+    }
+
+    /**
+     * @param context  context
+     * @param helper   the wallpaper helper to prefetch for
+     * @param provider provide the wallpaper source of item
+     */
+    public WallpaperPrefetcher(@NonNull Context context, @NonNull final WallpaperHelper helper,
+                               @NonNull SourceProvider provider) {
+        this(context, new JobFactory() {
+            @Override
+            public WallpaperJob create(WallpaperDecoder.Source source) {
+                return helper.createPrefetchJob(source);
+            }
+        }, provider);
+    }
+
+    private WallpaperPrefetcher(Context context, JobFactory factory, SourceProvider provider) {
+        mContext = context.getApplicationContext();
+        mJobFactory = factory;
+        mSourceProvider = provider;
+    }
+
+    /**
+     * Set the max count of wallpapers prepared at the same time, they share the workers with the displaying
+     * wallpaper, so keep it small
+     *
+     * @param count the max count, default is 1
+     */
+    public void setMaxInFlight(int count) {
+        mMaxInFlight = Math.max(1, count);
+        schedule();
+    }
+
+    @Override
+    public void onItemPrefetch(List<Object> items) {
+        mPending.clear();
+        for (Object item : items) {
+            if (item == null) {
+                continue;
+            }
+            WallpaperDecoder.Source source = mSourceProvider.getSource(item);
+            WallpaperJob job = source == null ? null : mJobFactory.create(source);
+            if (job != null && !mPending.containsKey(job.getCacheKey())) {
+                mPending.put(job.getCacheKey(), job);
+            }
+        }
+        // cancel the wallpapers far away from the focus, keep the ones still around
+        Iterator<Map.Entry<String, PrefetchTask>> iterator = mInFlight.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, PrefetchTask> entry = iterator.next();
+            if (mPending.remove(entry.getKey()) == null) {
+                cancelTask(entry.getValue());
+                iterator.remove();
+            }
+        }
+        schedule();
+    }
+
+    /**
+     * Cancel all the prefetching wallpapers
+     */
+    public void cancel() {
+        mPending.clear();
+        for (PrefetchTask task : mInFlight.values()) {
+            cancelTask(task);
+        }
+        mInFlight.clear();
+    }
+
+    private void cancelTask(PrefetchTask task) {
+        task.mFuture.cancel(false);
+        if (!task.mState.compareAndSet(PrefetchTask.STATE_QUEUED, PrefetchTask.STATE_CANCELED)) {
+            // a running task can not be interrupted, it still takes a worker until finished
+            mCanceling.add(task);
+        }
+    }
+
+    private void schedule() {
+        Iterator<Map.Entry<String, WallpaperJob>> iterator = mPending.entrySet().iterator();
+        while (mInFlight.size() + mCanceling.size() < mMaxInFlight && iterator.hasNext()) {
+            Map.Entry<String, WallpaperJob> entry = iterator.next();
+            iterator.remove();
+            if (entry.getValue().isCached()) {
+                continue;
+            }
+            PrefetchTask task = new PrefetchTask(entry.getKey(), entry.getValue());
+            task.mFuture = WallpaperController.execute(task);
+            mInFlight.put(task.mKey, task);
+        }
+    }
+
+    private void onFinished(PrefetchTask task) {
+        // a canceled task may finish after a new task of the same key is scheduled
+        if (mInFlight.get(task.mKey) == task) {
+            mInFlight.remove(task.mKey);
+        } else {
+            mCanceling.remove(task);
+        }
+        schedule();
+    }
+
+    private class PrefetchTask implements Runnable {
+        private static final int STATE_QUEUED = 0;
+        private static final int STATE_RUNNING = 1;
+        private static final int STATE_CANCELED = 2;
+        private final String mKey;
+        private final WallpaperJob mJob;
+        // the task either runs or is canceled before running, so the slot is freed exactly once
+        private final AtomicInteger mState = new AtomicInteger(STATE_QUEUED);
+        private Future<?> mFuture;
+
+        PrefetchTask(String key, WallpaperJob job) {
+            this.mKey = key;
+            this.mJob = job;
+        }
+
+        @Override
+        public void run() {
+            if (!mState.compareAndSet(STATE_QUEUED, STATE_RUNNING)) {
+                // canceled before running, its slot is freed already
+                return;
+            }
+            try {
+                // the wallpaper is in cache after run, nothing to display
+                mJob.run(BlurEngines.best(mContext));
+            } finally {
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onFinished(PrefetchTask.this);
+                    }
+                });
+            }
+        }
+    }
+}
@@ -6,11 +6,8 @@ import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
-import android.os.Handler;
-import android.os.HandlerThread;
-import android.os.Message;
+import android.net.Uri;
 import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.widget.FrameLayout;
@@ -22,6 +19,8 @@ import androidx.annotation.Nullable;
 import com.seagazer.ui.R;
 import com.seagazer.ui.util.Constants;
 
+import java.io.File;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -32,27 +31,31 @@ import java.util.List;
  * Call {@link #setTransitionDelay(int)}  to set the delay time of drawable transition.
  * Call {@link #setWallpaper(int)} or {@link #setWallpaper(Bitmap)} or {@link #setWallpaper(Drawable)}
  * to change a wallpaper.
+ * Call {@link #setWallpaper(Uri)} or {@link #setWallpaper(File)} or {@link #setWallpaper(InputStream)}
+ * to decode a wallpaper at the size of this view in a background thread.
  * Call {@link #setAlignMode(AlignMode)} to set the display mode if the drawable
  * can not fill the vision.
+ * Call {@link #setBlurRadius(float)} to blur the bitmap wallpaper before display.
+ * Call {@link #setBakedMode(boolean)} to render the clipped and masked wallpaper into a bitmap before display.
+ * Call {@link #setWallpaperCache(WallpaperCache)} to reuse the prepared wallpapers in memory and on disk.
+ * Call {@link #getController()} to get the metrics of transitions.
  */
 public class WallpaperView extends FrameLayout {
-    private static final int MSG_REFRESH_IMAGE = 0x0001;
-    private static final int MSG_REFRESH_RIPPLE = 0x0002;
     private static final int ALIGN_MODE_START = 0;
     private static final int ALIGN_MODE_CENTER = 1;
     private static final int ALIGN_MODE_END = 2;
     private static final int MAX_RIPPLE_COUNT = 10;
     private static final int RIPPLE_REFRESH_TIME = 30;
-    private CrossFadeDrawable mDrawable;
-    private int mTransitionDuration;
-    private int mTransitionDelay;
-    private boolean hasColorMask;
-    private int mFilterColor;
+    private final WallpaperController mController;
     private List<Ripple> mRipples = new ArrayList<>();
     private boolean isRipple;
-    private HandlerThread mThread;
-    private Handler mHandler;
-    private AlignMode mAlignMode;
+    private final Runnable mRefreshRipple = new Runnable() {
+        @Override
+        public void run() {
+            invalidate();
+            postDelayed(this, RIPPLE_REFRESH_TIME);
+        }
+    };
 
     public WallpaperView(Context context) {
         this(context, null);
@@ -66,27 +69,39 @@ public class WallpaperView extends FrameLayout {
         super(context, attrs, defStyleAttr);
         TypedArray ta = context.obtainStyledAttributes(attrs, R.styleable.WallpaperView);
         Drawable drawable = ta.getDrawable(R.styleable.WallpaperView_defaultDrawable);
-        mTransitionDuration = ta.getInt(R.styleable.WallpaperView_animDuration, Constants.ANIM_LONG_DURATION);
-        mTransitionDelay = ta.getInt(R.styleable.WallpaperView_animDelay, Constants.ANIM_DEFAULT_DELAY);
-        mFilterColor = ta.getColor(R.styleable.WallpaperView_filterColor, getResources().getColor(R.color.colorDimDark));
-        hasColorMask = ta.getBoolean(R.styleable.WallpaperView_isColorMask, false);
+        int transitionDuration = ta.getInt(R.styleable.WallpaperView_animDuration, Constants.ANIM_LONG_DURATION);
+        int transitionDelay = ta.getInt(R.styleable.WallpaperView_animDelay, Constants.ANIM_DEFAULT_DELAY);
+        int filterColor = ta.getColor(R.styleable.WallpaperView_filterColor, getResources().getColor(R.color.colorDimDark));
+        boolean hasColorMask = ta.getBoolean(R.styleable.WallpaperView_isColorMask, false);
         int alignMode = ta.getInt(R.styleable.WallpaperView_alignMode, 0);
         ta.recycle();
-        mDrawable = new CrossFadeDrawable();
-        setBackground(mDrawable);
+        mController = new WallpaperController(context, this);
+        mController.setTransitionDuration(transitionDuration);
+        mController.setTransitionDelay(transitionDelay);
+        if (hasColorMask) {
+            mController.setColorMask(filterColor);
+        }
+        setBackground(mController.getDrawable());
         if (drawable != null) {
-            mDrawable.fadeChange(drawable, mTransitionDuration);
+            mController.setDefaultWallpaper(drawable);
         }
         if (alignMode == ALIGN_MODE_START) {
-            mAlignMode = AlignMode.START;
+            mController.setAlignMode(AlignMode.START);
         } else if (alignMode == ALIGN_MODE_CENTER) {
-            mAlignMode = AlignMode.CENTER;
+            mController.setAlignMode(AlignMode.CENTER);
         } else if (alignMode == ALIGN_MODE_END) {
-            mAlignMode = AlignMode.END;
+            mController.setAlignMode(AlignMode.END);
         }
         setWillNotDraw(false);
+    }
 
-        mThread = new HandlerThread(this.getClass().getSimpleName());
+    /**
+     * Get the controller which schedules the wallpapers of this view and counts the transitions
+     *
+     * @return the controller
+     */
+    public WallpaperController getController() {
+        return mController;
     }
 
     /**
@@ -105,8 +120,7 @@ public class WallpaperView extends FrameLayout {
      * @param bitmap wallPaper
      */
     public void setWallpaper(@NonNull Bitmap bitmap) {
-        BitmapDrawable drawable = new BitmapDrawable(getResources(), bitmap);
-        setWallpaper(drawable);
+        mController.setWallpaper(bitmap);
     }
 
     /**
@@ -115,12 +129,55 @@ public class WallpaperView extends FrameLayout {
      * @param drawable wallPaper
      */
     public void setWallpaper(@NonNull Drawable drawable) {
-        mHandler.removeMessages(MSG_REFRESH_IMAGE);
-        RatioDrawableWrapper drawableWrapper = new RatioDrawableWrapper(drawable, mAlignMode);
-        if (hasColorMask) {
-            drawableWrapper.setColorMask(mFilterColor);
-        }
-        mHandler.sendMessageDelayed(mHandler.obtainMessage(MSG_REFRESH_IMAGE, drawableWrapper), mTransitionDelay);
+        mController.setWallpaper(drawable);
+    }
+
+    /**
+     * Set a new wallPaper to change, the image is decoded at the size of this view in a background thread
+     *
+     * @param uri the content uri of wallPaper
+     */
+    public void setWallpaper(@NonNull Uri uri) {
+        mController.setWallpaper(WallpaperDecoder.from(getContext(), uri));
+    }
+
+    /**
+     * Set a new wallPaper to change, the image is decoded at the size of this view in a background thread
+     *
+     * @param file the image file of wallPaper
+     */
+    public void setWallpaper(@NonNull File file) {
+        mController.setWallpaper(WallpaperDecoder.from(file));
+    }
+
+    /**
+     * Set a new wallPaper to change, the image is decoded at the size of this view in a background thread
+     *
+     * @param stream the stream of wallPaper, it will be closed after read
+     */
+    public void setWallpaper(@NonNull InputStream stream) {
+        setWallpaper(stream, null);
+    }
+
+    /**
+     * Set a new wallPaper to change, the image is decoded at the size of this view in a background thread
+     *
+     * @param stream the stream of wallPaper, it will be closed after read
+     * @param key    the key to identify the image in {@link WallpaperCache}, null if it can not be identified
+     */
+    public void setWallpaper(@NonNull InputStream stream, @Nullable String key) {
+        mController.setWallpaper(WallpaperDecoder.from(stream, key));
+    }
+
+    /**
+     * Create a job to prepare the wallpaper into the cache with current settings
+     *
+     * @param source the source of wallpaper
+     * @return the job, null if no cache is set or the source has no key
+     */
+    @Nullable
+    WallpaperJob createPrefetchJob(@NonNull WallpaperDecoder.Source source) {
+        return mController.createPrefetchJob(source);
     }
 
     /**
@@ -129,8 +186,39 @@ public class WallpaperView extends FrameLayout {
      * @param color the color of the mask layer
      */
     public void setColorMask(int color) {
-        hasColorMask = true;
-        mFilterColor = color;
+        mController.setColorMask(color);
+    }
+
+    /**
+     * Set the blur radius of the wallpaper, the bitmap will be downsampled and blurred
+     * by the fastest blur engine of this device in a background thread before display
+     *
+     * @param radius the blur radius in pixels of the wallpaper, 0 means no blur
+     */
+    public void setBlurRadius(float radius) {
+        mController.setBlurRadius(radius);
+    }
+
+    /**
+     * Set the baked mode, the wallpaper will be clipped and masked into a bitmap of the view size
+     * in a background thread before display, so the transition only draws the bitmap in every frame.
+     * The drawable wallpaper is drawn in a background thread in this mode, do not change it after set.
+     *
+     * @param baked true to bake the wallpaper before display, default is false
+     */
+    public void setBakedMode(boolean baked) {
+        mController.setBakedMode(baked);
+    }
+
+    /**
+     * Set a cache of the prepared wallpapers, the wallpaper set by uri, file or stream with a key is read from
+     * the cache if it is prepared with the same view size, align mode, color mask and blur radius before.
+     * The cached wallpaper is always baked, see {@link #setBakedMode(boolean)}.
+     *
+     * @param cache the cache, such as {@link WallpaperCache#getDefault(Context)}, null means no cache
+     */
+    public void setWallpaperCache(@Nullable WallpaperCache cache) {
+        mController.setWallpaperCache(cache);
     }
 
     /**
@@ -139,7 +227,7 @@ public class WallpaperView extends FrameLayout {
      * @param delay duration
      */
     public void setTransitionDelay(int delay) {
-        mTransitionDelay = delay;
+        mController.setTransitionDelay(delay);
     }
 
     /**
@@ -148,7 +236,7 @@ public class WallpaperView extends FrameLayout {
      * @param duration duration
      */
     public void setTransitionDuration(int duration) {
-        mTransitionDuration = duration;
+        mController.setTransitionDuration(duration);
     }
 
     /**
@@ -158,7 +246,7 @@ public class WallpaperView extends FrameLayout {
      * @param alignMode the base line start to clip, default is align top
      */
     public void setAlignMode(AlignMode alignMode) {
-        mAlignMode = alignMode;
+        mController.setAlignMode(alignMode);
     }
 
     @Override
@@ -167,39 +255,16 @@ public class WallpaperView extends FrameLayout {
         if (isRipple) {
             startRipple();
         }
-        mThread.start();
-        if (mHandler == null) {
-            mHandler = new Handler(mThread.getLooper()) {
-                @Override
-                public void handleMessage(Message msg) {
-                    if (msg.what == MSG_REFRESH_IMAGE) {
-                        Drawable newDrawable = (Drawable) msg.obj;
-                        WallpaperView.this.post(new Runnable() {
-                            @Override
-                            public void run() {
-                                mDrawable.fadeChange(newDrawable, mTransitionDuration);
-                            }
-                        });
-                    } else if (msg.what == MSG_REFRESH_RIPPLE) {
-                        postInvalidate();
-                        mHandler.sendEmptyMessageDelayed(MSG_REFRESH_RIPPLE, RIPPLE_REFRESH_TIME);
-                    }
-                }
-            };
-        }
     }
 
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
-        mHandler.removeCallbacksAndMessages(null);
-        mThread.quit();
+        removeCallbacks(mRefreshRipple);
         if (isRipple) {
             mRipples.clear();
         }
-        if (mDrawable != null) {
-            mDrawable.release();
-        }
+        mController.release();
     }
 
     /**
@@ -207,7 +272,8 @@ public class WallpaperView extends FrameLayout {
      */
     public void startRipple() {
         isRipple = true;
-        mHandler.sendEmptyMessage(MSG_REFRESH_RIPPLE);
+        removeCallbacks(mRefreshRipple);
+        post(mRefreshRipple);
         createRipples();
     }
 
@@ -216,7 +282,7 @@ public class WallpaperView extends FrameLayout {
      */
     public void endRipple() {
         isRipple = false;
-        mHandler.removeMessages(MSG_REFRESH_RIPPLE);
+        removeCallbacks(mRefreshRipple);
         mRipples.clear();
         postInvalidate();
     }